@@ -0,0 +1,84 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.scene.text.BitmapCharInfo;
+import com.ancevt.d2d2.scene.text.BitmapFont;
+import com.ancevt.d2d2.scene.text.BitmapText;
+import com.ancevt.d2d2.scene.texture.Texture;
+
+import javax.imageio.ImageIO;
+import java.awt.*;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.Map;
+
+/**
+ * Bitmap fonts for benchmarks without GL or a running engine: the glyphs are laid out by
+ * {@link AwtBitmapFontGenerator#rasterize}, the atlas is a {@link Texture} with a fake id of the same size.
+ */
+public final class BenchmarkFonts {
+
+    public static final String CHARS =
+            " !\"#$%&'()*+,-./0123456789:;<=>?@ABCDEFGHIJKLMNOPQRSTUVWXYZ[\\]^_`abcdefghijklmnopqrstuvwxyz{|}~" +
+                    "АБВГДЕЁЖЗИЙКЛМНОПРСТУФХЦЧШЩЪЫЬЭЮЯабвгдеёжзийклмнопрстуфхцчшщъыьэюя";
+
+    public static final String PARAGRAPH = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod " +
+            "tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation " +
+            "ullamco laboris nisi ut aliquip ex ea commodo consequat. Съешь же ещё этих мягких французских булок.";
+
+    // Фиктивный id, далеко от выдаваемых драйвером; в GL его никто не передаёт
+    private static final int FAKE_TEXTURE_ID = 1 << 24;
+
+    private BenchmarkFonts() {
+    }
+
+    public static BitmapFont create(int fontSize) {
+        AwtBitmapFontGenerator.RasterizedFont rasterized = AwtBitmapFontGenerator.rasterize(
+                new Font(Font.SANS_SERIF, Font.PLAIN, fontSize),
+                CHARS,
+                Map.of(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON),
+                0, 0, 0, 0
+        );
+
+        BufferedImage atlas;
+        try {
+            atlas = ImageIO.read(new ByteArrayInputStream(rasterized.png()));
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        Texture texture = new Texture(FAKE_TEXTURE_ID, atlas.getWidth(), atlas.getHeight());
+
+        return new BitmapFont(texture, parseCharInfos(rasterized.charsData()), "benchmark-" + fontSize);
+    }
+
+    /**
+     * @return text of {@link #PARAGRAPH} in a {@code width}x{@code height} box
+     */
+    public static BitmapText paragraph(BitmapFont font, boolean wordWrap, float width, float height) {
+        BitmapText text = new BitmapText(font);
+        text.setText(PARAGRAPH);
+        text.setWordWrap(wordWrap);
+        text.setSize(width, height);
+        return text;
+    }
+
+    // Строки BMF: "#meta ..." и затем "<символ> x y w h"; символ может быть пробелом
+    private static BitmapCharInfo[] parseCharInfos(String charsData) {
+        BitmapCharInfo[] charInfos = new BitmapCharInfo[Character.MAX_VALUE + 1];
+        for (String line : charsData.split("\n")) {
+            if (line.length() < 2 || line.startsWith("#meta")) continue;
+
+            char c = line.charAt(0);
+            String[] values = line.substring(2).split(" ");
+            charInfos[c] = new BitmapCharInfo(
+                    c,
+                    Integer.parseInt(values[0]),
+                    Integer.parseInt(values[1]),
+                    Integer.parseInt(values[2]),
+                    Integer.parseInt(values[3])
+            );
+        }
+        return charInfos;
+    }
+}
@@ -0,0 +1,44 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.scene.text.BitmapText;
+import org.openjdk.jmh.annotations.*;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Glyph layout of a paragraph of {@link BitmapText} with and without word wrap, without generating
+ * vertices: every placed glyph only bumps a counter. Word wrap measures the next word before each
+ * separator, which is what makes it the expensive case.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class BitmapTextLayoutBenchmark {
+
+    @Param({"false", "true"})
+    public boolean wordWrap;
+
+    @Param({"16", "48"})
+    public int fontSize;
+
+    private BitmapText text;
+    private int glyphs;
+
+    private final AwtBitmapTextDrawHelper.DrawCharFunction countGlyph =
+            (texture, c, letter, x, y, textureWidth, textureHeight, charInfo, scX, scY, tf, vf) -> glyphs++;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        text = BenchmarkFonts.paragraph(BenchmarkFonts.create(fontSize), wordWrap, 320, 2000);
+    }
+
+    @Benchmark
+    public int layout() {
+        glyphs = 0;
+        AwtBitmapTextDrawHelper.draw(text, 1f, 1f, 1f, countGlyph, null);
+        return glyphs;
+    }
+}
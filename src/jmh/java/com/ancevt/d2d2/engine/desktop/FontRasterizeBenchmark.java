@@ -0,0 +1,39 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.awt.*;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Bitmap font rasterization on {@code generateBitmapFont} (cache miss): Latin plus Cyrillic.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class FontRasterizeBenchmark {
+
+    @Param({"16", "48"})
+    public int fontSize;
+
+    private Font font;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        font = new Font(Font.SANS_SERIF, Font.PLAIN, fontSize);
+    }
+
+    @Benchmark
+    public AwtBitmapFontGenerator.RasterizedFont rasterizeFont() {
+        return AwtBitmapFontGenerator.rasterize(
+                font,
+                BenchmarkFonts.CHARS,
+                Map.of(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON),
+                0, 0, 0, 0
+        );
+    }
+}
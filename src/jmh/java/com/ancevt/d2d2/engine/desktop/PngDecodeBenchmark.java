@@ -0,0 +1,56 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import org.lwjgl.stb.STBImage;
+import org.lwjgl.system.MemoryStack;
+import org.openjdk.jmh.annotations.*;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * PNG decoding on texture load: STB, plus the ImageIO copy kept for software rendering.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PngDecodeBenchmark {
+
+    @Param({"assets/test.png", "assets/test2.png"})
+    public String png;
+
+    private byte[] pngBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        try (InputStream in = PngDecodeBenchmark.class.getClassLoader().getResourceAsStream(png)) {
+            if (in == null) throw new IllegalStateException("No resource " + png);
+            pngBytes = in.readAllBytes();
+        }
+    }
+
+    @Benchmark
+    public int decodePngStb() {
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer w = stack.mallocInt(1);
+            IntBuffer h = stack.mallocInt(1);
+            ByteBuffer image = DesktopTextureManager.decodePng(pngBytes, w, h);
+            int result = image.get(0);
+            STBImage.stbi_image_free(image);
+            return result;
+        }
+    }
+
+    @Benchmark
+    public BufferedImage decodePngImageIo() throws IOException {
+        return ImageIO.read(new ByteArrayInputStream(pngBytes));
+    }
+}
@@ -0,0 +1,63 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import org.openjdk.jmh.annotations.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Sound decoding to PCM through format detection, as {@link DesktopSound} does on load.
+ * <p>
+ * The repo has no sound assets, so by default a 10 s stereo WAV is generated in memory. Any supported file
+ * (Ogg, WAV, MP3) can be measured instead with {@code -p file=<path>}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class SoundDecodeBenchmark {
+
+    private static final String GENERATED = "generated";
+
+    @Param({GENERATED})
+    public String file;
+
+    private byte[] soundBytes;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        soundBytes = GENERATED.equals(file) ? generateWav(44100, 2, 10) : Files.readAllBytes(Path.of(file));
+    }
+
+    @Benchmark
+    public int decodeSound() {
+        DesktopSound.Pcm pcm = DesktopSound.decode(new ByteArrayInputStream(soundBytes));
+        int samples = pcm.samples().remaining();
+        pcm.free();
+        return samples;
+    }
+
+    // 16-bit PCM WAV с синусом 440 Гц
+    private static byte[] generateWav(int sampleRate, int channels, int seconds) {
+        int frames = sampleRate * seconds;
+        int dataBytes = frames * channels * 2;
+
+        ByteBuffer wav = ByteBuffer.allocate(44 + dataBytes).order(ByteOrder.LITTLE_ENDIAN);
+        wav.put("RIFF".getBytes()).putInt(36 + dataBytes).put("WAVE".getBytes());
+        wav.put("fmt ".getBytes()).putInt(16).putShort((short) 1).putShort((short) channels)
+                .putInt(sampleRate).putInt(sampleRate * channels * 2).putShort((short) (channels * 2)).putShort((short) 16);
+        wav.put("data".getBytes()).putInt(dataBytes);
+        for (int i = 0; i < frames; i++) {
+            short sample = (short) (Math.sin(2 * Math.PI * 440 * i / sampleRate) * Short.MAX_VALUE * 0.5);
+            for (int c = 0; c < channels; c++) wav.putShort(sample);
+        }
+        return wav.array();
+    }
+}
@@ -0,0 +1,73 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.engine.desktop.node.DesktopNodeFactory;
+import com.ancevt.d2d2.scene.Group;
+import com.ancevt.d2d2.scene.Node;
+import com.ancevt.d2d2.scene.texture.Texture;
+import com.ancevt.d2d2.scene.texture.TextureRegion;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scene traversal without GL: transforms, z-order and DrawInfo allocation for trees of 1k..1M nodes.
+ * Groups hold up to {@link #FAN_OUT} children, leaves alternate sprites and rectangles.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CollectNodesBenchmark {
+
+    private static final int FAN_OUT = 32;
+
+    @Param({"1000", "10000", "100000", "1000000"})
+    public int nodes;
+
+    private DesktopRenderer renderer;
+    private Group root;
+    private List<DrawInfo> drawQueue;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DesktopNodeFactory factory = new DesktopNodeFactory();
+        // Текстура без GL: id фиктивный, collectNodes его не трогает
+        TextureRegion region = new Texture(1, 256, 256).createTextureRegion(0, 0, 32, 32);
+        Random random = new Random(42);
+
+        root = factory.createGroup();
+        Group current = root;
+        int inGroup = 0;
+        for (int i = 0; i < nodes; i++) {
+            if (inGroup == FAN_OUT) {
+                Group group = factory.createGroup();
+                group.setXY(random.nextFloat() * 100, random.nextFloat() * 100);
+                root.addChild(group);
+                current = group;
+                inGroup = 0;
+            }
+
+            Node node = (i & 1) == 0 ? factory.createSprite(region) : factory.createRectangle(16, 16);
+            node.setXY(random.nextFloat() * 1920, random.nextFloat() * 1080);
+            node.setRotation(random.nextFloat() * 360);
+            current.addChild(node);
+            inGroup++;
+        }
+
+        renderer = new DesktopRenderer(null);
+        drawQueue = new ArrayList<>(nodes);
+    }
+
+    @Benchmark
+    public void collectNodes(Blackhole blackhole) {
+        drawQueue.clear();
+        renderer.collectNodes(root, 1f, 0f, 0f, 0f, 1f, 0f, 1f, drawQueue);
+        blackhole.consume(drawQueue.size());
+    }
+}
@@ -0,0 +1,118 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.engine.desktop.BenchmarkFonts;
+import com.ancevt.d2d2.engine.desktop.node.DesktopNodeFactory;
+import com.ancevt.d2d2.scene.Node;
+import com.ancevt.d2d2.scene.text.BitmapFont;
+import com.ancevt.d2d2.scene.texture.Texture;
+import org.lwjgl.BufferUtils;
+import org.openjdk.jmh.annotations.*;
+
+import java.nio.FloatBuffer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Vertex generation of each {@link DrawInfo} kind into a direct FloatBuffer, against {@link #baselineQuad()}
+ * which writes one quad of constants the same way. Every method rewinds the buffer itself: a per-invocation
+ * setup would cost more than most of the methods measured.
+ */
+@State(Scope.Thread)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+public class DrawInfoBenchmark {
+
+    private static final int FLOATS_PER_VERTEX = 8;
+
+    private final FloatBuffer buffer = BufferUtils.createFloatBuffer(DesktopRenderer.BATCH_SIZE * 4 * FLOATS_PER_VERTEX);
+
+    private DesktopRenderer renderer;
+    private DrawInfo sprite;
+    private DrawInfo rectangle;
+    private DrawInfo circle;
+    private DrawInfo lineBatch;
+    private DrawInfo canvas;
+    private DrawInfo bitmapText;
+    private DrawInfo wrappedBitmapText;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        DesktopNodeFactory factory = new DesktopNodeFactory();
+        renderer = new DesktopRenderer(null);
+
+        sprite = drawInfoOf(factory.createSprite(new Texture(1, 256, 256).createTextureRegion(0, 0, 64, 64)));
+        rectangle = drawInfoOf(factory.createRectangle(64, 64));
+        circle = drawInfoOf(factory.createCircleShape(32, 64));
+        lineBatch = drawInfoOf(factory.createLineBatch());
+        canvas = drawInfoOf(factory.createBitmapCanvas(256, 256));
+
+        BitmapFont font = BenchmarkFonts.create(16);
+        bitmapText = drawInfoOf(BenchmarkFonts.paragraph(font, false, 2000, 2000));
+        wrappedBitmapText = drawInfoOf(BenchmarkFonts.paragraph(font, true, 320, 2000));
+    }
+
+    // Тот же путь, что и в кадре: DrawInfo создаёт collectNodes
+    private DrawInfo drawInfoOf(Node node) {
+        List<DrawInfo> drawQueue = new ArrayList<>();
+        renderer.collectNodes(node, 1f, 0f, 0f, 0f, 1f, 0f, 1f, drawQueue);
+        if (drawQueue.size() != 1) {
+            throw new IllegalStateException("Expected one DrawInfo for " + node + ", got " + drawQueue.size());
+        }
+        return drawQueue.get(0);
+    }
+
+    @Benchmark
+    public int baselineQuad() {
+        buffer.clear();
+        for (int i = 0; i < 4; i++) {
+            buffer.put(i * 10f).put(i * 10f).put(0f).put(1f).put(1f).put(1f).put(1f).put(1f);
+        }
+        return 1;
+    }
+
+    @Benchmark
+    public int sprite() {
+        buffer.clear();
+        return sprite.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int rectangle() {
+        buffer.clear();
+        return rectangle.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int circle() {
+        buffer.clear();
+        return circle.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int lineBatch() {
+        buffer.clear();
+        return lineBatch.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int canvas() {
+        buffer.clear();
+        return canvas.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int bitmapText() {
+        buffer.clear();
+        return bitmapText.render(buffer, renderer);
+    }
+
+    @Benchmark
+    public int wrappedBitmapText() {
+        buffer.clear();
+        return wrappedBitmapText.render(buffer, renderer);
+    }
+}
@@ -1,6 +1,7 @@
 package com.ancevt.d2d2.engine.desktop;
 
 import com.ancevt.d2d2.D2D2;
+import com.ancevt.d2d2.engine.desktop.render.DynamicGlyphAtlas;
 import com.ancevt.d2d2.lifecycle.D2D2PropertyConstants;
 import com.ancevt.d2d2.scene.text.BitmapFont;
 import com.ancevt.d2d2.scene.text.FontBuilder;
@@ -20,60 +21,237 @@ import java.io.InputStream;
 import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.security.MessageDigest;
 import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HexFormat;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import static com.ancevt.d2d2.D2D2.log;
 
 public class AwtBitmapFontGenerator {
 
-    @SneakyThrows
+    // Меняется вместе с форматом BMF или логикой растеризации, чтобы старый кэш не подхватился
+    private static final int RASTERIZER_VERSION = 1;
+
+    private static final String PRINTABLE_ASCII = printableAscii();
+
+    /**
+     * Rasterises the font, or loads the atlas from {@link BitmapFontCache} if this font file was already
+     * rasterised with the same parameters. Must be called on the GL thread (the atlas becomes a texture).
+     */
     public static BitmapFont generate(FontBuilder builder) {
-        final GraphicsEnvironment ge = GraphicsEnvironment.getLocalGraphicsEnvironment();
+        return load(builder, prepare(builder));
+    }
+
+    /**
+     * {@link #generate} for several fonts: the atlases of independent fonts are rasterised in parallel,
+     * only the texture uploads run one by one on the calling (GL) thread.
+     *
+     * @return fonts in the order of {@code builders}
+     */
+    public static List<BitmapFont> generateAll(Collection<FontBuilder> builders) {
+        List<FontBuilder> list = List.copyOf(builders);
+        List<RasterizedFont> rasterized = list.parallelStream()
+                .map(AwtBitmapFontGenerator::prepare)
+                .toList();
+
+        List<BitmapFont> fonts = new ArrayList<>(list.size());
+        for (int i = 0; i < list.size(); i++) {
+            fonts.add(load(list.get(i), rasterized.get(i)));
+        }
+        return fonts;
+    }
 
-        InputStream inputStream = builder.getInputStream() != null ?
-                builder.getInputStream() : new FileInputStream(builder.getFilePath().toFile());
+    /**
+     * Printable ASCII of an AWT font, logical ({@link Font#SANS_SERIF}) or installed, antialiased: for tools
+     * and benchmarks without a font asset. Not cached on disk. Must be called on the GL thread.
+     */
+    public static BitmapFont generate(Font font) {
+        RasterizedFont rasterized = rasterize(font, PRINTABLE_ASCII,
+                Map.of(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON),
+                0, 0, 0, 0);
+        return load(font.getFontName() + "-" + font.getSize(), rasterized);
+    }
+
+    /**
+     * Font for large character sets (CJK): instead of the builder's whole char set, glyphs are rasterised
+     * on first use into a {@link DynamicGlyphAtlas} with the default page size and count. Must be called on
+     * the GL thread.
+     */
+    public static BitmapFont generateDynamic(FontBuilder builder) {
+        return generateDynamic(builder, DynamicGlyphAtlas.DEFAULT_PAGE_SIZE, DynamicGlyphAtlas.DEFAULT_MAX_PAGES);
+    }
 
-        Font font = Font.createFont(Font.TRUETYPE_FONT, inputStream);
+    /**
+     * The returned font itself holds only printable ASCII, for metrics and the software renderer; the GL
+     * renderer draws every glyph from the atlas.
+     */
+    @SneakyThrows
+    public static BitmapFont generateDynamic(FontBuilder builder, int pageSize, int maxPages) {
+        byte[] ttf;
+        try (InputStream inputStream = builder.getInputStream() != null ?
+                builder.getInputStream() : new FileInputStream(builder.getFilePath().toFile())) {
+            ttf = inputStream.readAllBytes();
+        }
+
+        Font font = createFont(ttf, builder);
+        Map<RenderingHints.Key, Object> hints = renderingHints(builder);
+
+        RasterizedFont base = rasterize(font, PRINTABLE_ASCII, hints,
+                builder.getOffsetX(), builder.getOffsetY(), builder.getSpacingX(), builder.getSpacingY());
+
+        BitmapFont bitmapFont = load(builder, base);
+        DynamicGlyphAtlas.register(bitmapFont, new DynamicGlyphAtlas(font, hints, pageSize, maxPages,
+                builder.getOffsetX(), builder.getOffsetY(), builder.getSpacingX(), builder.getSpacingY()));
+        return bitmapFont;
+    }
+
+    /**
+     * Everything up to the texture: cache lookup, AWT rasterisation, cache store, optional BMF export.
+     * No GL, safe to call from worker threads.
+     */
+    @SneakyThrows
+    static RasterizedFont prepare(FontBuilder builder) {
+        byte[] ttf;
+        try (InputStream inputStream = builder.getInputStream() != null ?
+                builder.getInputStream() : new FileInputStream(builder.getFilePath().toFile())) {
+            ttf = inputStream.readAllBytes();
+        }
+
+        Map<RenderingHints.Key, Object> hints = renderingHints(builder);
+        String key = cacheKey(ttf, builder, hints);
+
+        RasterizedFont rasterized = BitmapFontCache.load(key);
+        if (rasterized == null) {
+            rasterized = rasterize(createFont(ttf, builder), builder.getCharSourceString(), hints,
+                    builder.getOffsetX(), builder.getOffsetY(), builder.getSpacingX(), builder.getSpacingY());
+            BitmapFontCache.store(key, rasterized);
+        }
+
+        if (System.getProperty(D2D2PropertyConstants.D2D2_BITMAPFONT_SAVEBMF) != null) {
+            saveBmf(builder, rasterized);
+        }
+        return rasterized;
+    }
+
+    private static BitmapFont load(FontBuilder builder, RasterizedFont rasterized) {
+        return load(builder.getName(), rasterized);
+    }
+
+    private static BitmapFont load(String name, RasterizedFont rasterized) {
+        return D2D2.getBitmapFontManager().loadBitmapFont(
+                new ByteArrayInputStream(rasterized.charsData().getBytes(StandardCharsets.UTF_8)),
+                new ByteArrayInputStream(rasterized.png()),
+                name
+        );
+    }
+
+    private static String printableAscii() {
+        StringBuilder chars = new StringBuilder();
+        for (char c = ' '; c <= '~'; c++) chars.append(c);
+        return chars.toString();
+    }
+
+    @SneakyThrows
+    private static Font createFont(byte[] ttf, FontBuilder builder) {
+        Font font = Font.createFont(Font.TRUETYPE_FONT, new ByteArrayInputStream(ttf));
         String fontName = font.getName();
-        ge.registerFont(font);
+        GraphicsEnvironment.getLocalGraphicsEnvironment().registerFont(font);
 
         boolean bold = builder.isBold();
         boolean italic = builder.isItalic();
-        int fontSize = builder.getFontSize();
         int fontStyle = Font.PLAIN | (bold ? Font.BOLD : Font.PLAIN) | (italic ? Font.ITALIC : Font.PLAIN);
 
-        font = new Font(fontName, fontStyle, fontSize);
+        return new Font(fontName, fontStyle, builder.getFontSize());
+    }
 
-        String string = builder.getCharSourceString();
+    /**
+     * Font bytes hash plus every builder setting that changes the atlas or the char data.
+     */
+    @SneakyThrows
+    private static String cacheKey(byte[] ttf, FontBuilder builder, Map<RenderingHints.Key, Object> hints) {
+        StringBuilder key = new StringBuilder()
+                .append(RASTERIZER_VERSION).append('|')
+                .append(HexFormat.of().formatHex(MessageDigest.getInstance("SHA-256").digest(ttf))).append('|')
+                .append(builder.getFontSize()).append('|')
+                .append(builder.isBold()).append('|')
+                .append(builder.isItalic()).append('|')
+                .append(builder.getOffsetX()).append(',').append(builder.getOffsetY()).append('|')
+                .append(builder.getSpacingX()).append(',').append(builder.getSpacingY()).append('|');
+        hints.forEach((hint, value) -> key.append(hint).append('=').append(value).append(';'));
+        return key.append('|').append(builder.getCharSourceString()).toString();
+    }
 
-        Size size = computeSize(font, string, builder);
+    @SneakyThrows
+    private static void saveBmf(FontBuilder builder, RasterizedFont rasterized) {
+        String assetPath = builder.getAssetPath();
+        Path ttfPath = builder.getFilePath();
 
-        int textureWidth = size.w;
-        int textureHeight = size.h;
-        BufferedImage bufferedImage = new BufferedImage(textureWidth, textureHeight, BufferedImage.TYPE_INT_ARGB);
-        Graphics2D g = bufferedImage.createGraphics();
+        String fileName = assetPath != null ?
+                Path.of(assetPath).getFileName().toString() : ttfPath.getFileName().toString();
+
+        String saveToPathString = System.getProperty(D2D2PropertyConstants.D2D2_BITMAPFONT_SAVEBMF);
+
+        Path destinationPath = Files.createDirectories(Path.of(saveToPathString));
+
+        fileName = fileName.substring(0, fileName.length() - 4) + "-" + builder.getFontSize();
+
+        Files.write(destinationPath.resolve(fileName + ".png"), rasterized.png());
+        Files.writeString(destinationPath.resolve(fileName + ".bmf"), rasterized.charsData());
+        log.info(AwtBitmapFontGenerator.class, "BMF written %s/%s".formatted(destinationPath, fileName));
+    }
+
+    /**
+     * Atlas PNG and the BMF char data describing it.
+     */
+    record RasterizedFont(String charsData, byte[] png) {
+    }
+
+    // Порядок важен: как и раньше, более поздний антиалиасинг перекрывает ранний
+    static Map<RenderingHints.Key, Object> renderingHints(FontBuilder builder) {
+        Map<RenderingHints.Key, Object> hints = new LinkedHashMap<>();
 
         if (builder.fractionalMetrics() != null)
-            g.setRenderingHint(RenderingHints.KEY_FRACTIONALMETRICS, FractionalMetrics.nativeValue(builder.fractionalMetrics()));
+            hints.put(RenderingHints.KEY_FRACTIONALMETRICS, FractionalMetrics.nativeValue(builder.fractionalMetrics()));
 
         if (builder.isTextAntialiasOn())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_ON);
 
         if (builder.isTextAntialiasGasp())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_GASP);
 
         if (builder.isTextAntialiasLcdHrgb())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HRGB);
 
         if (builder.isTextAntialiasLcdHbgr())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HBGR);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_HBGR);
 
         if (builder.isTextAntialiasLcdVrgb())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VRGB);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VRGB);
 
         if (builder.isTextAntialiasLcdVbgr())
-            g.setRenderingHint(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VBGR);
+            hints.put(RenderingHints.KEY_TEXT_ANTIALIASING, RenderingHints.VALUE_TEXT_ANTIALIAS_LCD_VBGR);
+
+        return hints;
+    }
+
+    /**
+     * Draws the glyphs of {@code string} into an atlas. Pure AWT, no engine or GL needed.
+     */
+    @SneakyThrows
+    static RasterizedFont rasterize(Font font, String string, Map<RenderingHints.Key, Object> hints,
+                                    int offsetX, int offsetY, int spacingX, int spacingY) {
+        Size size = computeSize(font, string, spacingX, spacingY);
+
+        int textureWidth = size.w;
+        int textureHeight = size.h;
+        BufferedImage bufferedImage = new BufferedImage(textureWidth, textureHeight, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D g = bufferedImage.createGraphics();
+
+        hints.forEach(g::setRenderingHint);
 
         g.setColor(Color.WHITE);
 
@@ -95,18 +273,18 @@ public class AwtBitmapFontGenerator {
 
             CharInfo charInfo = new CharInfo();
             charInfo.character = c;
-            charInfo.x = x + builder.getOffsetX();
-            charInfo.y = y - h + toY + builder.getOffsetY();
+            charInfo.x = x + offsetX;
+            charInfo.y = y - h + toY + offsetY;
 
-            charInfo.width = w + builder.getOffsetX();
-            charInfo.height = h + builder.getOffsetY();
+            charInfo.width = w + offsetX;
+            charInfo.height = h + offsetY;
 
             charInfos.add(charInfo);
 
-            x += w + builder.getSpacingX();
+            x += w + spacingX;
 
             if (x >= bufferedImage.getWidth() - font.getSize()) {
-                y += h + builder.getSpacingY();
+                y += h + spacingY;
                 x = 0;
             }
         }
@@ -115,8 +293,8 @@ public class AwtBitmapFontGenerator {
 
         // meta
         stringBuilder.append("#meta ");
-        stringBuilder.append("spacingX ").append(builder.getSpacingX()).append(" ");
-        stringBuilder.append("spacingY ").append(builder.getSpacingY()).append(" ");
+        stringBuilder.append("spacingX ").append(spacingX).append(" ");
+        stringBuilder.append("spacingY ").append(spacingY).append(" ");
         stringBuilder.append("\n");
 
         // char infos
@@ -134,38 +312,13 @@ public class AwtBitmapFontGenerator {
                         .append('\n')
         );
 
-        byte[] charsDataBytes = stringBuilder.toString().getBytes(StandardCharsets.UTF_8);
-
         ByteArrayOutputStream pngOutputStream = new ByteArrayOutputStream();
         ImageIO.write(bufferedImage, "png", pngOutputStream);
-        byte[] pngDataBytes = pngOutputStream.toByteArray();
-
-        if (System.getProperty(D2D2PropertyConstants.D2D2_BITMAPFONT_SAVEBMF) != null) {
-            String assetPath = builder.getAssetPath();
-            Path ttfPath = builder.getFilePath();
-
-            String fileName = assetPath != null ?
-                    Path.of(assetPath).getFileName().toString() : ttfPath.getFileName().toString();
-
-            String saveToPathString = System.getProperty(D2D2PropertyConstants.D2D2_BITMAPFONT_SAVEBMF);
-
-            Path destinationPath = Files.createDirectories(Path.of(saveToPathString));
-
-            fileName = fileName.substring(0, fileName.length() - 4) + "-" + fontSize;
 
-            Files.write(destinationPath.resolve(fileName + ".png"), pngDataBytes);
-            Files.writeString(destinationPath.resolve(fileName + ".bmf"), stringBuilder.toString());
-            log.info(AwtBitmapFontGenerator.class, "BMF written %s/%s".formatted(destinationPath, fileName));
-        }
-
-        return D2D2.getBitmapFontManager().loadBitmapFont(
-                new ByteArrayInputStream(charsDataBytes),
-                new ByteArrayInputStream(pngDataBytes),
-                builder.getName()
-        );
+        return new RasterizedFont(stringBuilder.toString(), pngOutputStream.toByteArray());
     }
 
-    private static Size computeSize(Font font, String string, FontBuilder builder) {
+    private static Size computeSize(Font font, String string, int spacingX, int spacingY) {
         int x = 0;
         int y = 0;
         FontMetrics fontMetrics = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB).getGraphics().getFontMetrics(font);
@@ -176,10 +329,10 @@ public class AwtBitmapFontGenerator {
             int w = fontMetrics.charWidth(c);
             int h = fontMetrics.getHeight();
 
-            x += w + builder.getSpacingX();
+            x += w + spacingX;
 
             if (x >= 2048) {
-                y += h + builder.getSpacingY();
+                y += h + spacingY;
                 x = 0;
             }
         }
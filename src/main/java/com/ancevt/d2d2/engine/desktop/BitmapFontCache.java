@@ -0,0 +1,141 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * On-disk cache of rasterised bitmap fonts (atlas PNG plus BMF char data). The key is built by
+ * {@link AwtBitmapFontGenerator} from the TTF bytes and every parameter that affects rasterisation, so a
+ * changed font file or builder setting simply misses.
+ */
+public final class BitmapFontCache {
+
+    public static final String PROPERTY_ENABLED = "d2d2.bitmapfont.cache.enabled";
+    public static final String PROPERTY_DIR = "d2d2.bitmapfont.cache.dir";
+
+    private static final int MAGIC = 0x44324246; // "D2BF"
+    private static final int FILE_VERSION = 1;
+
+    // Шрифты генерируются и параллельно (generateAll), поэтому атомики
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    private BitmapFontCache() {
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(PROPERTY_ENABLED));
+    }
+
+    public static Path getDirectory() {
+        String dir = System.getProperty(PROPERTY_DIR);
+        return dir != null ? Path.of(dir) : Path.of(System.getProperty("java.io.tmpdir"), "d2d2-bitmapfont-cache");
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getRejected() {
+        return rejected.get();
+    }
+
+    /**
+     * @return cached atlas for the key, or null if there is no usable entry
+     */
+    static AwtBitmapFontGenerator.RasterizedFont load(String key) {
+        if (!isEnabled()) return null;
+
+        Path file = fileFor(key);
+        if (!Files.isRegularFile(file)) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(Files.readAllBytes(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != FILE_VERSION) return reject(file);
+
+            byte[] charsData = readBlock(in);
+            byte[] png = charsData == null ? null : readBlock(in);
+            if (png == null || in.available() != 0) return reject(file);
+
+            hits.incrementAndGet();
+            return new AwtBitmapFontGenerator.RasterizedFont(new String(charsData, StandardCharsets.UTF_8), png);
+        } catch (IOException e) {
+            // Обрезанный файл — это просто промах
+            return reject(file);
+        }
+    }
+
+    private static byte[] readBlock(DataInputStream in) throws IOException {
+        int length = in.readInt();
+        if (length < 0 || length > in.available()) return null;
+        byte[] block = new byte[length];
+        in.readFully(block);
+        return block;
+    }
+
+    static void store(String key, AwtBitmapFontGenerator.RasterizedFont font) {
+        if (!isEnabled()) return;
+
+        byte[] charsData = font.charsData().getBytes(StandardCharsets.UTF_8);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream(charsData.length + font.png().length + 16);
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeInt(FILE_VERSION);
+            out.writeInt(charsData.length);
+            out.write(charsData);
+            out.writeInt(font.png().length);
+            out.write(font.png());
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        Path file = fileFor(key);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "font", ".tmp");
+            Files.write(tmp, bytes.toByteArray());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error(BitmapFontCache.class, "Could not write cached bitmap font " + file, e);
+        }
+    }
+
+    private static AwtBitmapFontGenerator.RasterizedFont reject(Path file) {
+        rejected.incrementAndGet();
+        misses.incrementAndGet();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private static Path fileFor(String key) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return getDirectory().resolve(HexFormat.of().formatHex(digest.digest(key.getBytes(StandardCharsets.UTF_8))) + ".bf");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
@@ -36,6 +36,8 @@ public class CanvasControl {
     @Getter
     private static long windowId;
 
+    public static final String HEADLESS_CONTEXT_PROPERTY = "d2d2.headless.context";
+
     public static void init(int width, int height, String title) {
         CanvasControl.width = width;
         CanvasControl.height = height;
@@ -43,6 +45,11 @@ public class CanvasControl {
     }
 
     public static void createAndSetupGlfwWindow(DesktopEngine engine) {
+        if (engine.isHeadless()) {
+            createHeadlessContext(engine);
+            return;
+        }
+
         if (!GLFW.glfwInit()) {
             throw new IllegalStateException("GLFW is not initialized");
         }
@@ -227,6 +234,50 @@ public class CanvasControl {
 
     }
 
+    /**
+     * Creates a GL context with no visible window and no input callbacks. On GLFW builds with the
+     * null platform nothing touches the display server; the context comes from EGL (Mesa surfaceless,
+     * llvmpipe) or OSMesa, chosen by the {@code d2d2.headless.context} property ({@code egl},
+     * {@code osmesa} or {@code native}). The renderer draws into an offscreen FBO.
+     */
+    private static void createHeadlessContext(DesktopEngine engine) {
+        if (GLFW.glfwPlatformSupported(GLFW.GLFW_PLATFORM_NULL)) {
+            GLFW.glfwInitHint(GLFW.GLFW_PLATFORM, GLFW.GLFW_PLATFORM_NULL);
+        }
+
+        if (!GLFW.glfwInit()) {
+            throw new IllegalStateException("GLFW is not initialized");
+        }
+
+        GLFWErrorCallback.createPrint(System.err).set();
+
+        GLFW.glfwDefaultWindowHints();
+        GLFW.glfwWindowHint(GLFW.GLFW_VISIBLE, GLFW.GLFW_FALSE);
+        GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MAJOR, 3);
+        GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_VERSION_MINOR, 3);
+        GLFW.glfwWindowHint(GLFW.GLFW_OPENGL_PROFILE, GLFW.GLFW_OPENGL_CORE_PROFILE);
+
+        String contextApi = System.getProperty(HEADLESS_CONTEXT_PROPERTY, "egl");
+        switch (contextApi) {
+            case "egl" -> GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_CREATION_API, GLFW.GLFW_EGL_CONTEXT_API);
+            case "osmesa" -> GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_CREATION_API, GLFW.GLFW_OSMESA_CONTEXT_API);
+            case "native" -> GLFW.glfwWindowHint(GLFW.GLFW_CONTEXT_CREATION_API, GLFW.GLFW_NATIVE_CONTEXT_API);
+            default -> throw new IllegalArgumentException("Unknown " + HEADLESS_CONTEXT_PROPERTY + ": " + contextApi);
+        }
+
+        windowId = GLFW.glfwCreateWindow(width, height, title, 0, 0);
+        if (windowId == MemoryUtil.NULL) {
+            throw new RuntimeException("Unable to create headless context (" + contextApi + ")");
+        }
+
+        GLFW.glfwMakeContextCurrent(windowId);
+        GLFW.glfwSwapInterval(0);
+
+        GL.createCapabilities();
+
+        engine.getRenderer().init(windowId);
+    }
+
     public static void setSize(int width, int height) {
         CanvasControl.width = width;
         CanvasControl.height = height;
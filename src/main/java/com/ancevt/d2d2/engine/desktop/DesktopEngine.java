@@ -22,6 +22,8 @@ import java.awt.datatransfer.Clipboard;
 import java.awt.datatransfer.DataFlavor;
 import java.awt.datatransfer.StringSelection;
 import java.awt.datatransfer.Transferable;
+import java.util.Collection;
+import java.util.List;
 
 public class DesktopEngine extends EventDispatcherImpl implements Engine {
 
@@ -35,6 +37,10 @@ public class DesktopEngine extends EventDispatcherImpl implements Engine {
     private DesktopRenderer renderer;
     @Getter
     private DesktopDisplayManager displayManager;
+    /**
+     * {@link DesktopSoundManager}, or its device-less {@link SilentSoundManager} when a headless engine has
+     * no audio device.
+     */
     @Getter
     private DesktopSoundManager soundManager;
     @Getter
@@ -43,9 +49,23 @@ public class DesktopEngine extends EventDispatcherImpl implements Engine {
     private TextureManager textureManager;
     private int timerCheckFrameFrequency;
 
+    public static final String HEADLESS_PROPERTY = "d2d2.headless";
+
+    /**
+     * Headless engine renders the stage into an offscreen framebuffer on an invisible or surfaceless
+     * context, has no window input and steps frames as fast as possible instead of at {@code frameRate}.
+     */
+    @Getter
+    private final boolean headless;
+
     public DesktopEngine(int initialWidth, int initialHeight, String initialTitle) {
+        this(initialWidth, initialHeight, initialTitle, Boolean.getBoolean(HEADLESS_PROPERTY));
+    }
+
+    public DesktopEngine(int initialWidth, int initialHeight, String initialTitle, boolean headless) {
         this.initialWidth = initialWidth;
         this.initialHeight = initialHeight;
+        this.headless = headless;
         CanvasControl.init(initialWidth, initialHeight, initialTitle);
 
     }
@@ -56,13 +76,33 @@ public class DesktopEngine extends EventDispatcherImpl implements Engine {
         stage.setSize(initialWidth, initialHeight);
         renderer = new DesktopRenderer(this);
         displayManager = new DesktopDisplayManager();
-        soundManager = new DesktopSoundManager();
+        soundManager = createSoundManager();
         nodeFactory = new DesktopNodeFactory();
         textureManager = new DesktopTextureManager();
 
         CanvasControl.createAndSetupGlfwWindow(this);
     }
 
+    private DesktopSoundManager createSoundManager() {
+        if (!headless) return new DesktopSoundManager();
+
+        // На рендер-воркерах часто нет аудиоустройства — это не повод падать
+        try {
+            return new DesktopSoundManager();
+        } catch (IllegalStateException e) {
+            logger().error(DesktopEngine.class, "Sound is unavailable in headless mode: " + e.getMessage());
+            return new SilentSoundManager();
+        }
+    }
+
+    /**
+     * Runs exactly one tick and renders one frame, without waiting for {@code frameRate}.
+     * Meant for headless workers that drive the engine themselves instead of calling {@link #start()}.
+     */
+    public void step() {
+        renderer.step();
+    }
+
     @Override
     public Stage getStage() {
         return stage;
@@ -134,6 +174,22 @@ public class DesktopEngine extends EventDispatcherImpl implements Engine {
         return AwtBitmapFontGenerator.generate(fontBuilder);
     }
 
+    /**
+     * Generates several fonts at once, rasterising independent fonts in parallel. See
+     * {@link AwtBitmapFontGenerator#generateAll}.
+     */
+    public List<BitmapFont> generateBitmapFonts(Collection<FontBuilder> fontBuilders) {
+        return AwtBitmapFontGenerator.generateAll(fontBuilders);
+    }
+
+    /**
+     * Font whose glyphs are rasterised on first use, for character sets too large for one atlas. See
+     * {@link AwtBitmapFontGenerator#generateDynamic(FontBuilder)}.
+     */
+    public BitmapFont generateDynamicBitmapFont(FontBuilder fontBuilder) {
+        return AwtBitmapFontGenerator.generateDynamic(fontBuilder);
+    }
+
     @Override
     public void setTimerCheckFrameFrequency(int v) {
         timerCheckFrameFrequency = v;
@@ -153,6 +209,8 @@ public class DesktopEngine extends EventDispatcherImpl implements Engine {
     @Override
     public void setCanvasSize(int width, int height) {
         CanvasControl.setSize(width, height);
+        // Без окна некому прислать resize-колбэк
+        if (headless && renderer.getGlContextManager() != null) renderer.reshape();
     }
 
     @Override
@@ -19,136 +19,378 @@
 package com.ancevt.d2d2.engine.desktop;
 
 import com.ancevt.d2d2.asset.Assets;
+import com.ancevt.d2d2.engine.desktop.jfr.SoundDecodeEvent;
 import com.ancevt.d2d2.sound.Sound;
-import javazoom.jl.decoder.Bitstream;
-import javazoom.jl.decoder.Decoder;
-import javazoom.jl.decoder.JavaLayerException;
-import javazoom.jl.decoder.SampleBuffer;
+import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
+import org.lwjgl.stb.STBVorbis;
+import org.lwjgl.stb.STBVorbisInfo;
+import org.lwjgl.system.MemoryStack;
+import org.lwjgl.system.MemoryUtil;
 
+import java.io.BufferedInputStream;
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
-import java.util.ArrayList;
-import java.util.List;
+import java.nio.IntBuffer;
+import java.nio.ShortBuffer;
 
+import static com.ancevt.d2d2.D2D2.log;
 import static org.lwjgl.openal.AL10.*;
 
+/**
+ * Sound effect decoded into a single OpenAL buffer: Ogg Vorbis (STB), WAV or MP3 (JLayer), told apart by
+ * the first bytes of the stream. It owns no source: every play borrows one from the
+ * manager's {@link SourcePool}, so the same effect can overlap itself up to {@link #getMaxInstances()} times.
+ */
 public class DesktopSound implements Sound {
 
+    public static final int DEFAULT_MAX_INSTANCES = 4;
+
+    private final DesktopSoundManager soundManager;
     private final int bufferId;
-    private final int sourceId;
+    private final long bufferBytes;
+    private final Runnable playCommand = this::play;
+    private int lastSourceId;
+    private float volume = 1f;
+    private float pan;
     private boolean disposed = false;
 
+    /**
+     * When the pool is full, a play steals the oldest voice with the lowest priority not above its own.
+     */
+    @Getter
+    @Setter
+    private int priority;
+
+    /**
+     * Voices this sound may hold at once; one more play restarts the oldest of them.
+     */
+    @Getter
+    private int maxInstances = DEFAULT_MAX_INSTANCES;
+
     public DesktopSound(String assetPath) {
         this(Assets.getAsset(assetPath).getInputStream());
     }
 
-    @SneakyThrows
+    /**
+     * Attaches to the last initialised manager. Without one (headless engine with no audio device) the
+     * sound is silent: it plays nothing and holds no AL buffer.
+     */
     public DesktopSound(InputStream inputStream) {
-        Bitstream bitstream = new Bitstream(inputStream);
-        Decoder decoder = new Decoder();
+        this(inputStream, DesktopSoundManager.currentOrNull());
+    }
 
-        List<Short> pcmList = new ArrayList<>();
-        int channels = 0;
-        int sampleRate = 0;
+    DesktopSound(InputStream inputStream, DesktopSoundManager soundManager) {
+        if (soundManager == null) {
+            log.error(DesktopSound.class, "No DesktopSoundManager is initialised, the sound is silent");
+        }
+        // Менеджер без устройства (SilentSoundManager) — тот же беззвучный режим
+        this.soundManager = soundManager != null && soundManager.hasDevice() ? soundManager : null;
+        if (this.soundManager == null) {
+            bufferId = 0;
+            bufferBytes = 0;
+            return;
+        }
 
+        Pcm pcm = PcmCache.decode(inputStream);
         try {
-            while (true) {
-                javazoom.jl.decoder.Header header = bitstream.readFrame();
-                if (header == null) {
-                    break;
-                }
+            int format = pcm.channels() == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+
+            bufferId = alGenBuffers();
+            alBufferData(bufferId, format, pcm.samples(), pcm.sampleRate());
+            bufferBytes = pcm.samples().remaining() * 2L;
+        } finally {
+            pcm.free();
+        }
+    }
+
+    /**
+     * Interleaved 16-bit PCM in native memory, position to limit. Must be {@link #free() freed}.
+     */
+    record Pcm(ShortBuffer samples, int channels, int sampleRate) {
+        void free() {
+            MemoryUtil.memFree(samples);
+        }
+    }
 
-                SampleBuffer sampleBuffer = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+    private static final int DECODE_CHUNK_SAMPLES = 8192;
+    private static final int SNIFF_BYTES = 12;
 
-                if (channels == 0) {
-                    channels = header.mode() == 3 ? 1 : 2; // 1 = Mono, 2 = Stereo
-                    sampleRate = header.frequency();
+    /**
+     * Picks the decoder from the stream's magic bytes; anything that is not Ogg or RIFF/WAVE goes to JLayer,
+     * which also skips ID3 tags.
+     */
+    @SneakyThrows
+    static Pcm decode(InputStream inputStream) {
+        InputStream in = inputStream.markSupported() ? inputStream : new BufferedInputStream(inputStream);
+        in.mark(SNIFF_BYTES);
+        byte[] magic = in.readNBytes(SNIFF_BYTES);
+        in.reset();
+
+        return switch (formatOf(magic)) {
+            case "ogg" -> decodeOgg(in);
+            case "wav" -> decodeWav(in);
+            default -> decodeMp3(in);
+        };
+    }
+
+    /**
+     * @return "ogg", "wav" or "mp3" judging by the first bytes (at least {@value #SNIFF_BYTES} to tell WAV)
+     */
+    static String formatOf(byte[] magic) {
+        if (startsWith(magic, 0, "OggS")) return "ogg";
+        if (startsWith(magic, 0, "RIFF") && startsWith(magic, 8, "WAVE")) return "wav";
+        return "mp3";
+    }
+
+    private static boolean startsWith(byte[] bytes, int offset, String ascii) {
+        if (bytes.length < offset + ascii.length()) return false;
+        for (int i = 0; i < ascii.length(); i++) {
+            if (bytes[offset + i] != ascii.charAt(i)) return false;
+        }
+        return true;
+    }
+
+    /**
+     * STB needs the whole encoded file in native memory; the PCM buffer is sized exactly from the stream
+     * length and filled in one call.
+     */
+    @SneakyThrows
+    static Pcm decodeOgg(InputStream inputStream) {
+        SoundDecodeEvent event = new SoundDecodeEvent();
+        event.begin();
+
+        byte[] bytes = inputStream.readAllBytes();
+        ByteBuffer encoded = MemoryUtil.memAlloc(bytes.length);
+        encoded.put(bytes).flip();
+
+        long vorbis = MemoryUtil.NULL;
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer error = stack.mallocInt(1);
+            vorbis = STBVorbis.stb_vorbis_open_memory(encoded, error, null);
+            if (vorbis == MemoryUtil.NULL) {
+                throw new IOException("Could not open Ogg Vorbis stream, stb_vorbis error " + error.get(0));
+            }
+
+            STBVorbisInfo info = STBVorbisInfo.malloc(stack);
+            STBVorbis.stb_vorbis_get_info(vorbis, info);
+            int channels = info.channels();
+            int sampleRate = info.sample_rate();
+            checkChannels(channels);
+
+            ShortBuffer pcm = MemoryUtil.memAllocShort(STBVorbis.stb_vorbis_stream_length_in_samples(vorbis) * channels);
+            int frames = STBVorbis.stb_vorbis_get_samples_short_interleaved(vorbis, channels, pcm);
+            pcm.limit(frames * channels);
+
+            commitEvent(event, "ogg", channels, sampleRate, pcm);
+            return new Pcm(pcm, channels, sampleRate);
+        } finally {
+            if (vorbis != MemoryUtil.NULL) STBVorbis.stb_vorbis_close(vorbis);
+            MemoryUtil.memFree(encoded);
+        }
+    }
+
+    private static final int WAVE_FORMAT_PCM = 1;
+    private static final int WAVE_FORMAT_EXTENSIBLE = 0xFFFE;
+
+    /**
+     * Uncompressed PCM, 8 or 16 bit: the data chunk is the sample data, it is only copied into native memory
+     * (8-bit samples are widened to 16).
+     */
+    @SneakyThrows
+    static Pcm decodeWav(InputStream inputStream) {
+        SoundDecodeEvent event = new SoundDecodeEvent();
+        event.begin();
+
+        ByteBuffer wav = ByteBuffer.wrap(inputStream.readAllBytes()).order(ByteOrder.LITTLE_ENDIAN);
+        wav.position(12); // RIFF, размер, WAVE
+
+        int channels = 0;
+        int sampleRate = 0;
+        int bitsPerSample = 0;
+
+        while (wav.remaining() >= 8) {
+            int chunkId = wav.getInt();
+            int chunkSize = wav.getInt();
+            int chunkStart = wav.position();
+            // Последний чанк у многих редакторов записан с неверным размером — обрезаем по файлу
+            int chunkEnd = (int) Math.min((long) chunkStart + Integer.toUnsignedLong(chunkSize), wav.limit());
+
+            if (chunkId == 0x20746d66) { // "fmt "
+                int formatTag = wav.getShort() & 0xFFFF;
+                channels = wav.getShort();
+                sampleRate = wav.getInt();
+                wav.getInt(); // byte rate
+                wav.getShort(); // block align
+                bitsPerSample = wav.getShort();
+                if (formatTag == WAVE_FORMAT_EXTENSIBLE && chunkEnd - chunkStart >= 26) {
+                    formatTag = wav.getShort(chunkStart + 24) & 0xFFFF; // первые два байта GUID подформата
+                }
+                if (formatTag != WAVE_FORMAT_PCM || bitsPerSample != 8 && bitsPerSample != 16) {
+                    throw new IOException("Unsupported WAV encoding: format " + formatTag + ", " + bitsPerSample + " bit");
                 }
+                checkChannels(channels);
+            } else if (chunkId == 0x61746164) { // "data"
+                if (channels == 0) throw new IOException("WAV data chunk before fmt chunk");
 
-                for (short sample : sampleBuffer.getBuffer()) {
-                    pcmList.add(sample);
+                ShortBuffer pcm;
+                if (bitsPerSample == 16) {
+                    int samples = (chunkEnd - chunkStart) / 2;
+                    pcm = MemoryUtil.memAllocShort(samples);
+                    pcm.put(wav.slice(chunkStart, samples * 2).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer()).flip();
+                } else {
+                    int samples = chunkEnd - chunkStart;
+                    pcm = MemoryUtil.memAllocShort(samples);
+                    for (int i = chunkStart; i < chunkEnd; i++) {
+                        pcm.put((short) (((wav.get(i) & 0xFF) - 128) << 8));
+                    }
+                    pcm.flip();
                 }
 
-                bitstream.closeFrame();
+                commitEvent(event, "wav", channels, sampleRate, pcm);
+                return new Pcm(pcm, channels, sampleRate);
             }
-        } catch (JavaLayerException e) {
-            e.printStackTrace();
+            // Чанки выровнены по чётному размеру
+            wav.position(Math.min(chunkEnd + (chunkSize & 1), wav.limit()));
+        }
+        throw new IOException("WAV has no data chunk");
+    }
+
+    private static void checkChannels(int channels) throws IOException {
+        if (channels != 1 && channels != 2) {
+            throw new IOException("Only mono and stereo sounds are supported, got " + channels + " channels");
         }
+    }
 
-        short[] pcm = new short[pcmList.size()];
-        for (int i = 0; i < pcmList.size(); i++) {
-            pcm[i] = pcmList.get(i);
+    private static void commitEvent(SoundDecodeEvent event, String format, int channels, int sampleRate, ShortBuffer pcm) {
+        if (event.shouldCommit()) {
+            event.format = format;
+            event.channels = channels;
+            event.sampleRate = sampleRate;
+            event.samples = pcm.remaining();
+            event.bytes = pcm.remaining() * 2L;
+            event.commit();
         }
+    }
+
+    /**
+     * Decodes straight into a native buffer sized from the first frame header; it only grows if the
+     * estimate was short (VBR, unknown stream size). No per-sample objects.
+     */
+    @SneakyThrows
+    static Pcm decodeMp3(InputStream inputStream) {
+        SoundDecodeEvent event = new SoundDecodeEvent();
+        event.begin();
+
+        try (Mp3StreamDecoder decoder = new Mp3StreamDecoder(inputStream)) {
+            int channels = decoder.getChannels();
+            int sampleRate = decoder.getSampleRate();
+
+            long estimate = decoder.getEstimatedSamples();
+            int capacity = (int) Math.min(Integer.MAX_VALUE, estimate > 0 ? estimate + estimate / 32 : (long) sampleRate * channels);
+            ShortBuffer pcm = MemoryUtil.memAllocShort(capacity);
 
-        int format = channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16;
+            short[] chunk = new short[DECODE_CHUNK_SAMPLES];
+            try {
+                int n;
+                while ((n = decoder.read(chunk, 0, chunk.length)) > 0) {
+                    if (pcm.remaining() < n) {
+                        pcm = MemoryUtil.memRealloc(pcm, Math.max(pcm.capacity() + pcm.capacity() / 2, pcm.position() + n));
+                    }
+                    pcm.put(chunk, 0, n);
+                }
+            } catch (IOException e) {
+                // Как и раньше: битый хвост файла не повод терять всё, что уже декодировано
+                log.error(DesktopSound.class, "MP3 decoding stopped early", e);
+            }
+            pcm.flip();
 
-        bufferId = alGenBuffers();
-        ByteBuffer buffer = ByteBuffer.allocateDirect(pcm.length * 2).order(ByteOrder.nativeOrder());
-        buffer.asShortBuffer().put(pcm);
-        alBufferData(bufferId, format, buffer, sampleRate);
+            commitEvent(event, "mp3", channels, sampleRate, pcm);
 
-        sourceId = alGenSources();
-        alSourcei(sourceId, AL_BUFFER, bufferId);
-        alSourcef(sourceId, AL_GAIN, 1f); // Установите начальную громкость на приемлемый уровень
+            return new Pcm(pcm, channels, sampleRate);
+        }
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        if (maxInstances < 1) {
+            throw new IllegalArgumentException("maxInstances must be at least 1: " + maxInstances);
+        }
+        this.maxInstances = maxInstances;
     }
 
+    /**
+     * Starts a new voice. Plays of the same sound within one frame collapse into one, and the play is dropped
+     * if every voice belongs to higher-priority sounds.
+     */
     @Override
     public void play() {
-        if (!disposed) {
-            alSourcePlay(sourceId);
+        if (isActive()) {
+            int sourceId = soundManager.getSourcePool().play(this);
+            if (sourceId != 0) lastSourceId = sourceId;
         }
     }
 
+    /**
+     * Queues the play on the manager's audio thread and returns at once.
+     */
     @Override
     public void asyncPlay() {
-        new Thread(this::play).start();
+        if (isActive()) {
+            soundManager.submit(playCommand);
+        }
     }
 
+    /**
+     * Stops every voice of this sound.
+     */
     @Override
     public void stop() {
-        if (!disposed) {
-            alSourceStop(sourceId);
+        if (isActive()) {
+            soundManager.getSourcePool().stop(this);
         }
     }
 
+    /**
+     * Applies to the voices already playing and to later plays.
+     */
     @Override
     public void setVolume(float volume) {
-        if (!disposed) {
-            alSourcef(sourceId, AL_GAIN, volume);
+        if (disposed) return;
+        this.volume = volume;
+        if (soundManager != null) {
+            soundManager.getSourcePool().forEachVoice(this, sourceId -> alSourcef(sourceId, AL_GAIN, volume));
         }
     }
 
     @Override
     public float getVolume() {
-        return disposed ? 0.0f : alGetSourcef(sourceId, AL_GAIN);
+        return disposed ? 0.0f : volume;
     }
 
     @Override
     public void setPan(float pan) {
-        if (!disposed) {
-            alSource3f(sourceId, AL_POSITION, pan, 0, 0);
+        if (disposed) return;
+        this.pan = pan;
+        if (soundManager != null) {
+            soundManager.getSourcePool().forEachVoice(this, sourceId -> alSource3f(sourceId, AL_POSITION, pan, 0, 0));
         }
     }
 
     @Override
     public float getPan() {
-        if (disposed) {
-            return 0.0f;
-        }
-        float[] position = new float[3];
-        alGetSource3f(sourceId, AL_POSITION, position, new float[1], new float[1]);
-        return position[0];
+        return disposed ? 0.0f : pan;
     }
 
     @Override
     public void dispose() {
-        if (!disposed) {
-            alDeleteSources(sourceId);
+        if (isActive()) {
+            soundManager.getSourcePool().release(this);
             alDeleteBuffers(bufferId);
-            disposed = true;
         }
+        disposed = true;
     }
 
     @Override
@@ -156,11 +398,33 @@ public class DesktopSound implements Sound {
         return disposed;
     }
 
+    // Тихий звук (без менеджера) ведёт себя как живой, но к AL не обращается
+    private boolean isActive() {
+        return !disposed && soundManager != null;
+    }
+
     public int getBufferId() {
         return bufferId;
     }
 
+    /**
+     * @return size of the decoded PCM held by the AL buffer
+     */
+    public long getBufferBytes() {
+        return bufferBytes;
+    }
+
+    /**
+     * @return true while at least one voice of this sound is playing
+     */
+    public boolean isPlaying() {
+        return isActive() && soundManager.getSourcePool().isPlaying(this);
+    }
+
+    /**
+     * @return source of the most recently started voice, 0 if the sound has not played yet
+     */
     public int getSourceId() {
-        return sourceId;
+        return lastSourceId;
     }
 }
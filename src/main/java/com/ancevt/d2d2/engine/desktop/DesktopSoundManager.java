@@ -18,24 +18,51 @@
 
 package com.ancevt.d2d2.engine.desktop;
 
+import com.ancevt.d2d2.asset.Assets;
 import com.ancevt.d2d2.engine.SoundManager;
 import com.ancevt.d2d2.sound.Sound;
+import lombok.Getter;
 import org.lwjgl.openal.AL;
 import org.lwjgl.openal.ALC;
 import org.lwjgl.openal.ALCCapabilities;
 import org.lwjgl.openal.ALCapabilities;
 import org.lwjgl.system.MemoryStack;
 
+import java.io.IOException;
 import java.io.InputStream;
 import java.nio.ByteBuffer;
 import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Collection;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import static com.ancevt.d2d2.D2D2.log;
 import static org.lwjgl.openal.ALC10.*;
 import static org.lwjgl.system.MemoryStack.stackPush;
 import static org.lwjgl.system.MemoryUtil.NULL;
 
+/**
+ * Owns the OpenAL device, the shared {@link SourcePool} (size from {@code -Dd2d2.audio.voices}, 32 by default)
+ * and one audio thread that runs {@link Sound#asyncPlay()} requests.
+ */
 public class DesktopSoundManager implements SoundManager {
 
+    public static final String LOADER_THREADS_PROPERTY = "d2d2.sound.loaders";
+
+    private static final int COMMAND_QUEUE_CAPACITY = 1024;
+    private static final Runnable POISON = () -> {
+    };
+
+    private static volatile DesktopSoundManager current;
+
     private static class Holder {
         private static final DesktopSoundManager INSTANCE = new DesktopSoundManager();
     }
@@ -48,7 +75,33 @@ public class DesktopSoundManager implements SoundManager {
     private long device;
     private long context;
 
+    @Getter
+    private final SourcePool sourcePool;
+    @Getter
+    private final SoundBufferCache bufferCache = new SoundBufferCache(SoundBufferCache.budgetFromSystemProperty());
+    private final BlockingQueue<Runnable> commands = new ArrayBlockingQueue<>(COMMAND_QUEUE_CAPACITY);
+    private final Thread audioThread;
+    private ExecutorService loaders;
+    // Музыка держит свой поток и источник — их надо закрыть до уничтожения контекста
+    private final Set<StreamingSound> music = ConcurrentHashMap.newKeySet();
+
     public DesktopSoundManager() {
+        this(true);
+    }
+
+    /**
+     * @param openDevice false for {@link SilentSoundManager}: no OpenAL device, context or sources
+     */
+    DesktopSoundManager(boolean openDevice) {
+        audioThread = new Thread(this::commandLoop, "d2d2-audio");
+        audioThread.setDaemon(true);
+
+        if (!openDevice) {
+            sourcePool = null;
+            audioThread.start();
+            return;
+        }
+
         device = alcOpenDevice((ByteBuffer) null);
         if (device == NULL) {
             throw new IllegalStateException("Failed to open the default OpenAL device.");
@@ -73,21 +126,160 @@ public class DesktopSoundManager implements SoundManager {
         if (!alCapabilities.OpenAL10) {
             throw new IllegalStateException("OpenAL 1.0 not supported.");
         }
+
+        sourcePool = new SourcePool(SourcePool.voicesFromSystemProperty());
+
+        audioThread.start();
+
+        current = this;
+    }
+
+    /**
+     * @return false for {@link SilentSoundManager}, whose sounds play nothing
+     */
+    public boolean hasDevice() {
+        return sourcePool != null;
+    }
+
+    /**
+     * Manager that sounds created without one attach to: the last one initialised.
+     *
+     * @return null if there is none
+     */
+    static DesktopSoundManager currentOrNull() {
+        return current;
+    }
+
+    /**
+     * Hands a command to the audio thread. If hundreds are already waiting, the new one is dropped.
+     */
+    void submit(Runnable command) {
+        commands.offer(command);
+    }
+
+    private void commandLoop() {
+        try {
+            while (true) {
+                Runnable command = commands.take();
+                if (command == POISON) break;
+                try {
+                    command.run();
+                } catch (RuntimeException e) {
+                    log.error(DesktopSoundManager.class, "Audio command failed", e);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
     }
 
     @Override
     public void cleanup() {
+        commands.clear();
+        commands.offer(POISON);
+        try {
+            audioThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        synchronized (this) {
+            if (loaders != null) loaders.shutdownNow();
+        }
+        music.forEach(StreamingSound::dispose);
+        music.clear();
+        bufferCache.clear();
+        if (current == this) current = null;
+        if (!hasDevice()) return;
+
+        sourcePool.dispose();
         alcDestroyContext(context);
         alcCloseDevice(device);
     }
 
+    /**
+     * Ogg Vorbis, WAV (8/16-bit PCM) or MP3, detected from the content rather than the file name.
+     * Decoded Ogg and MP3 are kept in the {@link PcmCache} between launches.
+     */
     @Override
     public Sound loadSound(InputStream inputStream) {
-        return new DesktopSound(inputStream);
+        return new DesktopSound(inputStream, this);
     }
 
     @Override
     public Sound loadSound(String assetFileName) {
-        return new DesktopSound(assetFileName);
+        return new DesktopSound(Assets.getAsset(assetFileName).getInputStream(), this);
+    }
+
+    /**
+     * Long tracks: decoded while playing instead of up front. See {@link StreamingSound}.
+     * Tracks not disposed by then are disposed by {@link #cleanup()}.
+     */
+    public StreamingSound loadMusic(InputStream inputStream) {
+        return track(new StreamingSound(inputStream));
+    }
+
+    public StreamingSound loadMusic(String assetFileName) {
+        return track(new StreamingSound(assetFileName));
+    }
+
+    private StreamingSound track(StreamingSound sound) {
+        music.removeIf(StreamingSound::isDisposed);
+        music.add(sound);
+        return sound;
+    }
+
+    /**
+     * Loads sounds in parallel on a fixed pool of loader threads ({@value #LOADER_THREADS_PROPERTY}, one per
+     * core by default). Each worker decodes its file and creates the AL buffer; OpenAL's context is
+     * process-wide, so no hand-off to another thread is needed. Duplicate names are loaded once.
+     */
+    public SoundBankLoad loadSounds(Collection<String> assetFileNames) {
+        ExecutorService executor = loaders();
+        SoundBankLoad load = new SoundBankLoad();
+        for (String assetFileName : assetFileNames) {
+            if (load.get(assetFileName) != null) continue;
+            load.add(assetFileName, CompletableFuture.supplyAsync(() -> loadSound(assetFileName), executor));
+        }
+        load.seal();
+        return load;
+    }
+
+    /**
+     * {@link #loadSounds} for a text asset listing one sound per line; blank lines and {@code #} comments
+     * are skipped.
+     */
+    public SoundBankLoad loadSoundManifest(String manifestAssetFileName) {
+        String manifest;
+        try (InputStream inputStream = Assets.getAsset(manifestAssetFileName).getInputStream()) {
+            manifest = new String(inputStream.readAllBytes(), StandardCharsets.UTF_8);
+        } catch (IOException e) {
+            throw new IllegalStateException("Could not read sound manifest " + manifestAssetFileName, e);
+        }
+        List<String> assetFileNames = manifest.lines()
+                .map(String::strip)
+                .filter(line -> !line.isEmpty() && !line.startsWith("#"))
+                .toList();
+        return loadSounds(assetFileNames);
+    }
+
+    /**
+     * Handle that decodes on first play and whose buffer lives in {@link #getBufferCache()} under the
+     * {@value SoundBufferCache#PROPERTY_BUDGET} byte budget (64 MiB by default).
+     */
+    public LazySound loadLazySound(String assetFileName) {
+        return new LazySound(assetFileName, () -> Assets.getAsset(assetFileName).getInputStream(), this);
+    }
+
+    synchronized ExecutorService loaders() {
+        if (loaders == null) {
+            int threads = Math.max(1, Integer.getInteger(LOADER_THREADS_PROPERTY, Runtime.getRuntime().availableProcessors()));
+            AtomicInteger counter = new AtomicInteger();
+            loaders = Executors.newFixedThreadPool(threads, runnable -> {
+                Thread thread = new Thread(runnable, "d2d2-sound-loader-" + counter.incrementAndGet());
+                thread.setDaemon(true);
+                return thread;
+            });
+        }
+        return loaders;
     }
 }
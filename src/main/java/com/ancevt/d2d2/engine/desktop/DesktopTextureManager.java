@@ -2,6 +2,8 @@ package com.ancevt.d2d2.engine.desktop;
 
 import com.ancevt.d2d2.D2D2;
 import com.ancevt.d2d2.asset.Assets;
+import com.ancevt.d2d2.engine.desktop.jfr.TextureLoadEvent;
+import com.ancevt.d2d2.engine.desktop.render.GlContextManager;
 import com.ancevt.d2d2.scene.Group;
 import com.ancevt.d2d2.scene.text.BitmapText;
 import com.ancevt.d2d2.scene.texture.Texture;
@@ -9,6 +11,7 @@ import com.ancevt.d2d2.scene.texture.TextureManager;
 import com.ancevt.d2d2.scene.texture.TextureRegion;
 import com.ancevt.d2d2.util.InputStreamFork;
 import lombok.Getter;
+import lombok.Setter;
 import lombok.SneakyThrows;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.opengl.GL11;
@@ -37,13 +40,23 @@ public class DesktopTextureManager implements TextureManager {
     final Map<Integer, Texture> loadedTextures = new HashMap<>();
     private final Map<String, Texture> loadedTexturesByAssetPath = new HashMap<>();
 
+    /**
+     * Without GL (software rendering) textures are only decoded into {@link #getBufferedImageMap()}.
+     */
+    @Getter
+    @Setter
+    private static boolean softwareMode;
+
+    // Идентификаторы без GL; далеко от тех, что выдаёт драйвер
+    private static int nextSoftwareTextureId = 1 << 20;
+
     public static void bindTexture(Texture texture) {
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texture.getId());
+        GlContextManager.bindTexture(texture.getId());
     }
 
     public static Texture loadTextureInternal(int width, int height) {
         int textureId = GL11.glGenTextures();
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+        GlContextManager.bindTexture(textureId);
 
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_NEAREST);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_NEAREST);
@@ -88,7 +101,13 @@ public class DesktopTextureManager implements TextureManager {
 
     @Override
     public void unloadTexture(Texture texture) {
-        glDeleteTextures(texture.getId());
+        // Текстуры из пула render target'ов возвращаем в пул, остальные удаляем
+        if (softwareMode) {
+            bufferedImageMap.remove(texture.getId());
+        } else if (!RenderTargetPool.getInstance().recycleTexture(texture.getId())) {
+            glDeleteTextures(texture.getId());
+            GlContextManager.forgetTexture(texture.getId());
+        }
         loadedTextures.remove(texture.getId());
 
         String key = null;
@@ -114,7 +133,38 @@ public class DesktopTextureManager implements TextureManager {
     }
 
     @SneakyThrows
+    private Texture softwareLoadTexture(InputStream pngInputStream) {
+        BufferedImage bufferedImage = ImageIO.read(pngInputStream);
+        if (bufferedImage == null) {
+            throw new RuntimeException("Failed to load image");
+        }
+
+        int textureId = nextSoftwareTextureId++;
+        bufferedImageMap.put(textureId, bufferedImage);
+
+        Texture result = new Texture(textureId, bufferedImage.getWidth(), bufferedImage.getHeight());
+        loadedTextures.put(textureId, result);
+        return result;
+    }
+
     private Texture actualLoadTexture(InputStream pngInputStream) {
+        TextureLoadEvent event = new TextureLoadEvent();
+        event.begin();
+
+        Texture result = softwareMode ? softwareLoadTexture(pngInputStream) : glLoadTexture(pngInputStream);
+
+        if (event.shouldCommit()) {
+            event.textureId = result.getId();
+            event.width = result.getWidth();
+            event.height = result.getHeight();
+            event.software = softwareMode;
+            event.commit();
+        }
+        return result;
+    }
+
+    @SneakyThrows
+    private Texture glLoadTexture(InputStream pngInputStream) {
         InputStreamFork fork = InputStreamFork.fork(pngInputStream);
         InputStream inputStream = fork.left();
 
@@ -123,22 +173,12 @@ public class DesktopTextureManager implements TextureManager {
         try (MemoryStack stack = MemoryStack.stackPush()) {
             byte[] imageBytes = inputStream.readAllBytes();
 
-            ByteBuffer imageBuffer = BufferUtils.createByteBuffer(imageBytes.length);
-            imageBuffer.put(imageBytes);
-            imageBuffer.flip();
-
             IntBuffer w = stack.mallocInt(1);
             IntBuffer h = stack.mallocInt(1);
-            IntBuffer channels = stack.mallocInt(1);
-
-            STBImage.stbi_set_flip_vertically_on_load(true);
-            ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 4);
-            if (image == null) {
-                throw new RuntimeException("Failed to load image: " + STBImage.stbi_failure_reason());
-            }
+            ByteBuffer image = decodePng(imageBytes, w, h);
 
             int textureId = GL11.glGenTextures();
-            GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+            GlContextManager.bindTexture(textureId);
             GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, GL11.GL_LINEAR);
             GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, GL11.GL_LINEAR);
             //GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL13.GL_CLAMP_TO_EDGE);
@@ -170,6 +210,26 @@ public class DesktopTextureManager implements TextureManager {
         }
     }
 
+    /**
+     * Decodes to RGBA8 rows bottom-up (GL order). The result must be freed with {@code stbi_image_free}.
+     */
+    static ByteBuffer decodePng(byte[] imageBytes, IntBuffer w, IntBuffer h) {
+        ByteBuffer imageBuffer = BufferUtils.createByteBuffer(imageBytes.length);
+        imageBuffer.put(imageBytes);
+        imageBuffer.flip();
+
+        try (MemoryStack stack = MemoryStack.stackPush()) {
+            IntBuffer channels = stack.mallocInt(1);
+
+            STBImage.stbi_set_flip_vertically_on_load(true);
+            ByteBuffer image = STBImage.stbi_load_from_memory(imageBuffer, w, h, channels, 4);
+            if (image == null) {
+                throw new RuntimeException("Failed to load image: " + STBImage.stbi_failure_reason());
+            }
+            return image;
+        }
+    }
+
     @Override
     public void registerTextureRegion(String key, TextureRegion textureRegion) {
         TextureDataInfoReadHelper.regionMap.put(key, textureRegion);
@@ -0,0 +1,179 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.sound.Sound;
+import lombok.Getter;
+
+import java.io.InputStream;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Supplier;
+
+/**
+ * Sound handle that decodes on first {@link #play()} (or earlier, on a {@link #prewarm()} hint) and keeps
+ * its buffer in the manager's {@link SoundBufferCache}. A cold sound may be evicted at any time and is
+ * simply decoded again on its next play, so thousands of these cost only their settings while unused.
+ */
+public class LazySound implements Sound {
+
+    private final DesktopSoundManager soundManager;
+    private final Supplier<InputStream> source;
+    private final SoundBufferCache cache;
+
+    @Getter
+    private final String name;
+    private volatile float volume = 1f;
+    private volatile float pan;
+    @Getter
+    private volatile int priority;
+    @Getter
+    private volatile int maxInstances = DesktopSound.DEFAULT_MAX_INSTANCES;
+
+    private CompletableFuture<DesktopSound> loading;
+    private volatile boolean disposed;
+
+    LazySound(String name, Supplier<InputStream> source, DesktopSoundManager soundManager) {
+        this.name = name;
+        this.source = source;
+        this.soundManager = soundManager;
+        this.cache = soundManager.getBufferCache();
+    }
+
+    /**
+     * Starts decoding on a loader thread unless the buffer is already resident or being loaded.
+     *
+     * @return completes when the sound can play without decoding
+     */
+    public synchronized CompletableFuture<Void> prewarm() {
+        if (disposed || cache.contains(this)) return CompletableFuture.completedFuture(null);
+        return startLoading().thenApply(sound -> null);
+    }
+
+    public boolean isResident() {
+        return cache.contains(this);
+    }
+
+    /**
+     * Plays at once if resident; otherwise decodes on the calling thread first (or waits for a running
+     * prewarm).
+     */
+    @Override
+    public void play() {
+        if (disposed || cache.play(this)) return;
+
+        CompletableFuture<DesktopSound> pending;
+        synchronized (this) {
+            pending = loading;
+        }
+        if (pending != null) {
+            pending.join();
+            // Пока ждали, буфер могли уже вытеснить — тогда декодируем сами
+            if (disposed || cache.play(this)) return;
+        }
+
+        DesktopSound sound = decode();
+        if (disposed) {
+            sound.dispose();
+            return;
+        }
+        cache.putAndPlay(this, sound);
+        // dispose() мог прийти, пока декодировали
+        if (disposed) cache.remove(this);
+    }
+
+    /**
+     * Never decodes on the caller: a cold sound is prewarmed and plays when ready.
+     */
+    @Override
+    public void asyncPlay() {
+        if (disposed) return;
+        if (cache.contains(this)) {
+            soundManager.submit(this::play);
+        } else {
+            prewarm().thenRun(this::play);
+        }
+    }
+
+    @Override
+    public void stop() {
+        DesktopSound sound = cache.peek(this);
+        if (sound != null) sound.stop();
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        this.volume = volume;
+        DesktopSound sound = cache.peek(this);
+        if (sound != null) sound.setVolume(volume);
+    }
+
+    @Override
+    public float getVolume() {
+        return disposed ? 0.0f : volume;
+    }
+
+    @Override
+    public void setPan(float pan) {
+        this.pan = pan;
+        DesktopSound sound = cache.peek(this);
+        if (sound != null) sound.setPan(pan);
+    }
+
+    @Override
+    public float getPan() {
+        return disposed ? 0.0f : pan;
+    }
+
+    public void setPriority(int priority) {
+        this.priority = priority;
+        DesktopSound sound = cache.peek(this);
+        if (sound != null) sound.setPriority(priority);
+    }
+
+    public void setMaxInstances(int maxInstances) {
+        if (maxInstances < 1) {
+            throw new IllegalArgumentException("maxInstances must be at least 1: " + maxInstances);
+        }
+        this.maxInstances = maxInstances;
+        DesktopSound sound = cache.peek(this);
+        if (sound != null) sound.setMaxInstances(maxInstances);
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) return;
+        disposed = true;
+        cache.remove(this);
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    private synchronized CompletableFuture<DesktopSound> startLoading() {
+        if (loading == null) {
+            loading = CompletableFuture.supplyAsync(this::load, soundManager.loaders());
+            loading.whenComplete((sound, error) -> {
+                synchronized (this) {
+                    loading = null;
+                }
+            });
+        }
+        return loading;
+    }
+
+    private DesktopSound load() {
+        DesktopSound sound = cache.put(this, decode());
+        // dispose() мог прийти, пока декодировали
+        if (disposed) cache.remove(this);
+        return sound;
+    }
+
+    private DesktopSound decode() {
+        DesktopSound sound = new DesktopSound(source.get(), soundManager);
+        sound.setVolume(volume);
+        sound.setPan(pan);
+        sound.setPriority(priority);
+        sound.setMaxInstances(maxInstances);
+        return sound;
+    }
+}
@@ -0,0 +1,160 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import javazoom.jl.decoder.Bitstream;
+import javazoom.jl.decoder.BitstreamException;
+import javazoom.jl.decoder.Decoder;
+import javazoom.jl.decoder.DecoderException;
+import javazoom.jl.decoder.Header;
+import javazoom.jl.decoder.SampleBuffer;
+import lombok.Getter;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Pull decoder for MP3: hands out interleaved 16-bit PCM a chunk at a time instead of decoding the whole file.
+ */
+class Mp3StreamDecoder implements Closeable {
+
+    private final InputStream inputStream;
+    private final Bitstream bitstream;
+    private final Decoder decoder = new Decoder();
+
+    @Getter
+    private int channels;
+    @Getter
+    private int sampleRate;
+    /**
+     * Total samples (all channels) guessed from the first frame header and the stream size, 0 if unknown.
+     */
+    @Getter
+    private long estimatedSamples;
+
+    // Остаток последнего декодированного фрейма, не влезший в предыдущий read
+    private short[] pending = new short[0];
+    private int pendingOffset;
+    private int pendingLength;
+    private boolean ended;
+
+    Mp3StreamDecoder(InputStream inputStream) throws IOException {
+        this.inputStream = inputStream;
+        int streamBytes = inputStream.available();
+        this.bitstream = new Bitstream(inputStream);
+        // Первый фрейм нужен сразу, чтобы знать формат до первого read
+        try {
+            Header header = bitstream.readFrame();
+            if (header == null) {
+                throw new IOException("No MP3 frames in stream");
+            }
+            if (streamBytes > 0) {
+                // available() у файлов и массивов — весь размер; у сетевых потоков оценки просто не будет
+                estimatedSamples = (long) (header.total_ms(streamBytes) / 1000.0 * header.frequency())
+                        * (header.mode() == Header.SINGLE_CHANNEL ? 1 : 2);
+            }
+            decodeHeader(header);
+        } catch (BitstreamException | DecoderException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Fills {@code dst} from {@code offset}.
+     *
+     * @return samples written (all channels), less than requested only at the end of the stream
+     */
+    int read(short[] dst, int offset, int length) throws IOException {
+        int written = 0;
+        while (written < length) {
+            if (pendingLength == 0 && (ended || !decodeFrame())) break;
+
+            int n = Math.min(length - written, pendingLength);
+            System.arraycopy(pending, pendingOffset, dst, offset + written, n);
+            pendingOffset += n;
+            pendingLength -= n;
+            written += n;
+        }
+        return written;
+    }
+
+    /**
+     * Skips whole frames without decoding them, up to {@code frames} sample frames (samples per channel).
+     *
+     * @return sample frames actually skipped
+     */
+    long skipFrames(long frames) throws IOException {
+        long skipped = 0;
+
+        // Сначала то, что уже декодировано
+        long fromPending = Math.min(frames * channels, pendingLength) / channels;
+        pendingOffset += (int) (fromPending * channels);
+        pendingLength -= (int) (fromPending * channels);
+        skipped += fromPending;
+
+        try {
+            while (skipped < frames && !ended) {
+                Header header = bitstream.readFrame();
+                if (header == null) {
+                    ended = true;
+                    break;
+                }
+                long frameSamples = Math.round(header.ms_per_frame() * sampleRate / 1000.0);
+                if (skipped + frameSamples > frames) {
+                    // Последний фрейм декодируем: позиция должна быть точной до сэмпла
+                    decodeHeader(header);
+                    int rest = (int) ((frames - skipped) * channels);
+                    rest = Math.min(rest, pendingLength);
+                    pendingOffset += rest;
+                    pendingLength -= rest;
+                    skipped += rest / channels;
+                    break;
+                }
+                bitstream.closeFrame();
+                skipped += frameSamples;
+            }
+        } catch (BitstreamException | DecoderException e) {
+            throw new IOException(e);
+        }
+        return skipped;
+    }
+
+    private boolean decodeFrame() throws IOException {
+        try {
+            Header header = bitstream.readFrame();
+            if (header == null) {
+                ended = true;
+                return false;
+            }
+            decodeHeader(header);
+            return true;
+        } catch (BitstreamException | DecoderException e) {
+            throw new IOException(e);
+        }
+    }
+
+    private void decodeHeader(Header header) throws DecoderException {
+        SampleBuffer sampleBuffer = (SampleBuffer) decoder.decodeFrame(header, bitstream);
+        if (channels == 0) {
+            channels = header.mode() == Header.SINGLE_CHANNEL ? 1 : 2;
+            sampleRate = header.frequency();
+        }
+        // getBuffer() — массив с запасом, валидна только его начальная часть
+        int length = sampleBuffer.getBufferLength();
+        if (pending.length < length) pending = new short[length];
+        System.arraycopy(sampleBuffer.getBuffer(), 0, pending, 0, length);
+        pendingOffset = 0;
+        pendingLength = length;
+        bitstream.closeFrame();
+    }
+
+    @Override
+    public void close() throws IOException {
+        try {
+            bitstream.close();
+        } catch (BitstreamException e) {
+            throw new IOException(e);
+        } finally {
+            inputStream.close();
+        }
+    }
+}
@@ -0,0 +1,225 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import lombok.SneakyThrows;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.ShortBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.stream.Stream;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * On-disk cache of decoded sound effects. Entries are keyed by a hash of the compressed source, so an
+ * edited asset simply misses; a hit reads the samples straight into native memory for {@code alBufferData}
+ * without decoding. WAV is never cached, it is already PCM. The directory is trimmed to
+ * {@value #PROPERTY_MAX_BYTES} bytes (256 MiB by default), least recently used entries first.
+ */
+public final class PcmCache {
+
+    public static final String PROPERTY_ENABLED = "d2d2.sound.cache.enabled";
+    public static final String PROPERTY_DIR = "d2d2.sound.cache.dir";
+    public static final String PROPERTY_MAX_BYTES = "d2d2.sound.cache.maxBytes";
+
+    private static final long DEFAULT_MAX_BYTES = 256L << 20;
+    private static final String EXTENSION = ".pcm";
+
+    private static final int MAGIC = 0x44325043; // "D2PC"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 6 * Integer.BYTES;
+    // Сэмплы пишутся в порядке байт машины, чтобы отдавать их в OpenAL без перестановки
+    private static final int NATIVE_ORDER = ByteOrder.nativeOrder() == ByteOrder.LITTLE_ENDIAN ? 1 : 2;
+
+    // Звуки грузятся и параллельно (loadSounds), поэтому атомики
+    private static final AtomicLong hits = new AtomicLong();
+    private static final AtomicLong misses = new AtomicLong();
+    private static final AtomicLong rejected = new AtomicLong();
+
+    private PcmCache() {
+    }
+
+    public static long getHits() {
+        return hits.get();
+    }
+
+    public static long getMisses() {
+        return misses.get();
+    }
+
+    public static long getRejected() {
+        return rejected.get();
+    }
+
+    public static boolean isEnabled() {
+        return !"false".equalsIgnoreCase(System.getProperty(PROPERTY_ENABLED));
+    }
+
+    public static Path getDirectory() {
+        String dir = System.getProperty(PROPERTY_DIR);
+        return dir != null ? Path.of(dir) : Path.of(System.getProperty("java.io.tmpdir"), "d2d2-sound-cache");
+    }
+
+    public static long getMaxBytes() {
+        return Long.getLong(PROPERTY_MAX_BYTES, DEFAULT_MAX_BYTES);
+    }
+
+    /**
+     * Decodes through the cache: a hit is read from disk, a miss is decoded and written for next time.
+     */
+    @SneakyThrows
+    static DesktopSound.Pcm decode(InputStream inputStream) {
+        if (!isEnabled()) return DesktopSound.decode(inputStream);
+
+        byte[] source = inputStream.readAllBytes();
+        if ("wav".equals(DesktopSound.formatOf(source))) {
+            return DesktopSound.decode(new ByteArrayInputStream(source));
+        }
+
+        Path file = fileFor(source);
+        DesktopSound.Pcm cached = load(file);
+        if (cached != null) {
+            hits.incrementAndGet();
+            return cached;
+        }
+
+        misses.incrementAndGet();
+        DesktopSound.Pcm pcm = DesktopSound.decode(new ByteArrayInputStream(source));
+        store(file, pcm);
+        trim(file.getParent());
+        return pcm;
+    }
+
+    private static DesktopSound.Pcm load(Path file) {
+        if (!Files.isRegularFile(file)) return null;
+
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size < HEADER_BYTES) return reject(file);
+
+            ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+            channel.read(header, 0);
+            header.flip();
+            if (header.getInt() != MAGIC || header.getInt() != FILE_VERSION || header.getInt() != NATIVE_ORDER) {
+                return reject(file);
+            }
+            int channels = header.getInt();
+            int sampleRate = header.getInt();
+            int samples = header.getInt();
+            if (samples < 0 || size != HEADER_BYTES + samples * 2L) return reject(file);
+
+            // Не mmap: отображение отпускает только GC, а Pcm.free() освобождает память сразу после загрузки в OpenAL
+            ByteBuffer body = MemoryUtil.memAlloc(samples * 2);
+            try {
+                long position = HEADER_BYTES;
+                while (body.hasRemaining()) {
+                    int read = channel.read(body, position);
+                    if (read < 0) throw new IOException("Unexpected end of file");
+                    position += read;
+                }
+            } catch (IOException e) {
+                MemoryUtil.memFree(body);
+                throw e;
+            }
+            body.flip();
+
+            // Время изменения служит меткой последнего использования для trim()
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            return new DesktopSound.Pcm(MemoryUtil.memShortBuffer(MemoryUtil.memAddress(body), samples), channels, sampleRate);
+        } catch (IOException e) {
+            log.error(PcmCache.class, "Could not read cached PCM " + file, e);
+            return null;
+        }
+    }
+
+    private static void store(Path file, DesktopSound.Pcm pcm) {
+        ShortBuffer samples = pcm.samples();
+        ByteBuffer header = ByteBuffer.allocate(HEADER_BYTES);
+        header.putInt(MAGIC).putInt(FILE_VERSION).putInt(NATIVE_ORDER)
+                .putInt(pcm.channels()).putInt(pcm.sampleRate()).putInt(samples.remaining())
+                .flip();
+        ByteBuffer body = MemoryUtil.memByteBuffer(MemoryUtil.memAddress(samples), samples.remaining() * 2);
+
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "pcm", ".tmp");
+            try (FileChannel channel = FileChannel.open(tmp, StandardOpenOption.WRITE)) {
+                while (header.hasRemaining()) channel.write(header);
+                while (body.hasRemaining()) channel.write(body);
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error(PcmCache.class, "Could not write cached PCM " + file, e);
+        }
+    }
+
+    /**
+     * Deletes the least recently used entries until the directory fits in {@link #getMaxBytes()}.
+     */
+    private static void trim(Path dir) {
+        long maxBytes = getMaxBytes();
+        List<Path> files = new ArrayList<>();
+        long total = 0;
+
+        try (Stream<Path> stream = Files.list(dir)) {
+            for (Path file : (Iterable<Path>) stream::iterator) {
+                if (!file.getFileName().toString().endsWith(EXTENSION)) continue;
+                files.add(file);
+                total += Files.size(file);
+            }
+            if (total <= maxBytes) return;
+
+            files.sort(Comparator.comparing(PcmCache::lastModified));
+            for (Path file : files) {
+                if (total <= maxBytes) break;
+                long size = Files.size(file);
+                // Параллельная загрузка могла удалить файл раньше нас
+                if (Files.deleteIfExists(file)) total -= size;
+            }
+        } catch (IOException e) {
+            log.error(PcmCache.class, "Could not trim PCM cache " + dir, e);
+        }
+    }
+
+    private static FileTime lastModified(Path file) {
+        try {
+            return Files.getLastModifiedTime(file);
+        } catch (IOException e) {
+            return FileTime.fromMillis(0);
+        }
+    }
+
+    private static DesktopSound.Pcm reject(Path file) {
+        rejected.incrementAndGet();
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+        return null;
+    }
+
+    private static Path fileFor(byte[] source) {
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            return getDirectory().resolve(HexFormat.of().formatHex(digest.digest(source)) + EXTENSION);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
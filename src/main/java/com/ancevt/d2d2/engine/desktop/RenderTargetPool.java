@@ -0,0 +1,256 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.engine.desktop.render.GlContextManager;
+import lombok.Getter;
+import lombok.Setter;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+
+import static org.lwjgl.opengl.GL11.GL_RGBA8;
+import static org.lwjgl.opengl.GL11.glDeleteTextures;
+
+/**
+ * Size/format keyed pool of {@link RenderTargetTexture}s (FBO + color texture).
+ * <p>
+ * Targets are taken with {@link #acquire(int, int)} and handed back with {@link #release(RenderTargetTexture)}.
+ * Textures detached from a pooled target (see {@link RenderTargetTexture#renderGroupToTexture}) are recycled
+ * into the pool when unloaded through the texture manager. Idle entries are evicted oldest-first when the
+ * idle byte cap is exceeded and when they stay unused longer than the idle expiry.
+ */
+public class RenderTargetPool {
+
+    private static class Holder {
+        private static final RenderTargetPool INSTANCE = new RenderTargetPool();
+    }
+
+    public static RenderTargetPool getInstance() {
+        return Holder.INSTANCE;
+    }
+
+    private static final long TRIM_INTERVAL_MILLIS = 1000;
+
+    private record Key(int width, int height, int internalFormat) {
+        long byteSize() {
+            return (long) width * height * 4;
+        }
+    }
+
+    private record IdleTarget(RenderTargetTexture target, long releasedAt) {
+    }
+
+    private record IdleTexture(int textureId, long releasedAt) {
+    }
+
+    private final Map<Key, ArrayDeque<IdleTarget>> idleTargets = new HashMap<>();
+    private final Map<Key, ArrayDeque<IdleTexture>> idleTextures = new HashMap<>();
+    private final Map<Integer, Key> detachedTextures = new HashMap<>();
+    private final Set<RenderTargetTexture> inUse = Collections.newSetFromMap(new IdentityHashMap<>());
+
+    @Getter
+    @Setter
+    private long maxIdleBytes = 64L * 1024 * 1024;
+    @Getter
+    @Setter
+    private long idleExpiryMillis = 10_000;
+
+    @Getter
+    private long hits;
+    @Getter
+    private long misses;
+    @Getter
+    private long textureReuses;
+    @Getter
+    private long evictions;
+    @Getter
+    private long bytesIdle;
+
+    private long lastTrimTime;
+
+    public RenderTargetTexture acquire(int width, int height) {
+        return acquire(width, height, GL_RGBA8);
+    }
+
+    public RenderTargetTexture acquire(int width, int height, int internalFormat) {
+        trim();
+
+        Key key = new Key(width, height, internalFormat);
+        ArrayDeque<IdleTarget> deque = idleTargets.get(key);
+        RenderTargetTexture target;
+
+        if (deque != null && !deque.isEmpty()) {
+            target = deque.pollLast().target();
+            bytesIdle -= heldBytes(target);
+            hits++;
+        } else {
+            target = new RenderTargetTexture(width, height, internalFormat);
+            misses++;
+        }
+
+        inUse.add(target);
+        return target;
+    }
+
+    public void release(RenderTargetTexture target) {
+        if (!inUse.remove(target)) {
+            throw new IllegalStateException("render target is not acquired from this pool");
+        }
+
+        Key key = new Key(target.getWidth(), target.getHeight(), target.getInternalFormat());
+        idleTargets.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(new IdleTarget(target, System.currentTimeMillis()));
+        bytesIdle += heldBytes(target);
+
+        enforceCap();
+    }
+
+    void markDetached(int textureId, int width, int height, int internalFormat) {
+        detachedTextures.put(textureId, new Key(width, height, internalFormat));
+    }
+
+    /**
+     * Takes back a texture previously detached from a pooled target.
+     *
+     * @return false if the texture does not come from this pool and must be deleted by the caller
+     */
+    public boolean recycleTexture(int textureId) {
+        Key key = detachedTextures.remove(textureId);
+        if (key == null) return false;
+
+        idleTextures.computeIfAbsent(key, k -> new ArrayDeque<>()).addLast(new IdleTexture(textureId, System.currentTimeMillis()));
+        bytesIdle += key.byteSize();
+
+        enforceCap();
+        return true;
+    }
+
+    int takeRecycledTexture(int width, int height, int internalFormat) {
+        Key key = new Key(width, height, internalFormat);
+        ArrayDeque<IdleTexture> deque = idleTextures.get(key);
+        if (deque == null || deque.isEmpty()) return 0;
+
+        bytesIdle -= key.byteSize();
+        textureReuses++;
+        return deque.pollLast().textureId();
+    }
+
+    public long getBytesInUse() {
+        long result = 0;
+        for (RenderTargetTexture target : inUse) {
+            result += heldBytes(target);
+        }
+        return result;
+    }
+
+    public long getBytesHeld() {
+        return bytesIdle + getBytesInUse();
+    }
+
+    public void resetStats() {
+        hits = 0;
+        misses = 0;
+        textureReuses = 0;
+        evictions = 0;
+    }
+
+    /**
+     * Evicts entries idle for longer than {@link #getIdleExpiryMillis()}. Cheap to call every frame.
+     */
+    public void trim() {
+        long now = System.currentTimeMillis();
+        if (now - lastTrimTime < TRIM_INTERVAL_MILLIS) return;
+        lastTrimTime = now;
+
+        long deadline = now - idleExpiryMillis;
+        while (true) {
+            Key key = findOldest();
+            if (key == null || oldestTime(key) > deadline) break;
+            evict(key);
+        }
+    }
+
+    public void clear() {
+        while (true) {
+            Key key = findOldest();
+            if (key == null) break;
+            evict(key);
+        }
+    }
+
+    private void enforceCap() {
+        while (bytesIdle > maxIdleBytes) {
+            Key key = findOldest();
+            if (key == null) break;
+            evict(key);
+        }
+    }
+
+    // Ключ, у которого самая старая запись (таргет или текстура) в голове очереди
+    private Key findOldest() {
+        Key result = null;
+        long oldest = Long.MAX_VALUE;
+
+        for (Iterator<Map.Entry<Key, ArrayDeque<IdleTarget>>> it = idleTargets.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, ArrayDeque<IdleTarget>> e = it.next();
+            if (e.getValue().isEmpty()) {
+                it.remove();
+                continue;
+            }
+            long t = e.getValue().peekFirst().releasedAt();
+            if (t < oldest) {
+                oldest = t;
+                result = e.getKey();
+            }
+        }
+        for (Iterator<Map.Entry<Key, ArrayDeque<IdleTexture>>> it = idleTextures.entrySet().iterator(); it.hasNext(); ) {
+            Map.Entry<Key, ArrayDeque<IdleTexture>> e = it.next();
+            if (e.getValue().isEmpty()) {
+                it.remove();
+                continue;
+            }
+            long t = e.getValue().peekFirst().releasedAt();
+            if (t < oldest) {
+                oldest = t;
+                result = e.getKey();
+            }
+        }
+        return result;
+    }
+
+    private long oldestTime(Key key) {
+        long result = Long.MAX_VALUE;
+        ArrayDeque<IdleTarget> targets = idleTargets.get(key);
+        if (targets != null && !targets.isEmpty()) result = targets.peekFirst().releasedAt();
+        ArrayDeque<IdleTexture> textures = idleTextures.get(key);
+        if (textures != null && !textures.isEmpty()) result = Math.min(result, textures.peekFirst().releasedAt());
+        return result;
+    }
+
+    private void evict(Key key) {
+        ArrayDeque<IdleTarget> targets = idleTargets.get(key);
+        ArrayDeque<IdleTexture> textures = idleTextures.get(key);
+
+        long targetTime = targets != null && !targets.isEmpty() ? targets.peekFirst().releasedAt() : Long.MAX_VALUE;
+        long textureTime = textures != null && !textures.isEmpty() ? textures.peekFirst().releasedAt() : Long.MAX_VALUE;
+
+        if (targetTime <= textureTime && targets != null && !targets.isEmpty()) {
+            RenderTargetTexture target = targets.pollFirst().target();
+            bytesIdle -= heldBytes(target);
+            target.dispose();
+        } else if (textures != null && !textures.isEmpty()) {
+            int textureId = textures.pollFirst().textureId();
+            bytesIdle -= key.byteSize();
+            glDeleteTextures(textureId);
+            GlContextManager.forgetTexture(textureId);
+        }
+        evictions++;
+    }
+
+    private static long heldBytes(RenderTargetTexture target) {
+        return target.getTextureId() != 0 ? target.getByteSize() : 0;
+    }
+}
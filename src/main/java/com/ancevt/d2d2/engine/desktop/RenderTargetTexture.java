@@ -2,6 +2,8 @@ package com.ancevt.d2d2.engine.desktop;
 
 import com.ancevt.d2d2.D2D2;
 import com.ancevt.d2d2.engine.desktop.render.DesktopRenderer;
+import com.ancevt.d2d2.engine.desktop.render.GlContextManager;
+import com.ancevt.d2d2.engine.desktop.render.GpuTimer;
 import com.ancevt.d2d2.scene.Group;
 import com.ancevt.d2d2.scene.texture.Texture;
 import lombok.Getter;
@@ -13,25 +15,45 @@ import static org.lwjgl.opengl.GL30.*;
 
 public class RenderTargetTexture {
 
+    @Getter
     private final int fboId;
     @Getter
-    private final int textureId;
+    private int textureId;
+    @Getter
     private final int width;
+    @Getter
     private final int height;
+    @Getter
+    private final int internalFormat;
 
     public RenderTargetTexture(int width, int height) {
+        this(width, height, GL_RGBA8);
+    }
+
+    public RenderTargetTexture(int width, int height, int internalFormat) {
         this.width = width;
         this.height = height;
+        this.internalFormat = internalFormat;
+
+        fboId = glGenFramebuffers();
+        attachTexture(createTexture());
+    }
 
-        textureId = glGenTextures();
-        glBindTexture(GL_TEXTURE_2D, textureId);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
+    private int createTexture() {
+        int texId = glGenTextures();
+        GlContextManager.bindTexture(texId);
+        glTexImage2D(GL_TEXTURE_2D, 0, internalFormat, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
 
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_LINEAR);
         glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_LINEAR);
+        return texId;
+    }
 
-        fboId = glGenFramebuffers();
-        glBindFramebuffer(GL_FRAMEBUFFER, fboId);
+    private void attachTexture(int texId) {
+        textureId = texId;
+
+        int previous = GlContextManager.getBoundFramebuffer();
+        GlContextManager.bindFramebuffer(fboId);
         glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, textureId, 0);
 
         int status = glCheckFramebufferStatus(GL_FRAMEBUFFER);
@@ -39,21 +61,44 @@ public class RenderTargetTexture {
             throw new RuntimeException("Framebuffer incomplete: " + status);
         }
 
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GlContextManager.bindFramebuffer(previous);
+    }
+
+    /**
+     * Hands the color texture over to the caller. The FBO stays alive and gets a new
+     * (recycled if possible) texture the next time it is bound.
+     */
+    public int detachTexture() {
+        int texId = textureId;
+        textureId = 0;
+        return texId;
+    }
+
+    public long getByteSize() {
+        return (long) width * height * 4;
     }
 
     public void bind() {
-        glBindFramebuffer(GL_FRAMEBUFFER, fboId);
-        glViewport(0, 0, width, height);
+        if (textureId == 0) {
+            int recycled = RenderTargetPool.getInstance().takeRecycledTexture(width, height, internalFormat);
+            attachTexture(recycled != 0 ? recycled : createTexture());
+        }
+        GlContextManager.bindFramebuffer(fboId);
+        GlContextManager.viewport(0, 0, width, height);
     }
 
     public void unbind() {
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        GlContextManager.bindFramebuffer(0);
     }
 
     public void dispose() {
+        if (GlContextManager.getBoundFramebuffer() == fboId) GlContextManager.bindFramebuffer(0);
         glDeleteFramebuffers(fboId);
-        glDeleteTextures(textureId);
+        if (textureId != 0) {
+            glDeleteTextures(textureId);
+            GlContextManager.forgetTexture(textureId);
+            textureId = 0;
+        }
     }
 
     public static Texture renderGroupToTexture(Group group, int width, int height) {
@@ -65,32 +110,28 @@ public class RenderTargetTexture {
             throw new IllegalStateException("group can't be on screen when rendering to texture");
         }
 
-        int fbo = glGenFramebuffers();
-        int texId = glGenTextures();
-
-        glBindTexture(GL_TEXTURE_2D, texId);
-        glTexImage2D(GL_TEXTURE_2D, 0, GL_RGBA8, width, height, 0, GL_RGBA, GL_UNSIGNED_BYTE, (ByteBuffer) null);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MIN_FILTER, GL_NEAREST);
-        glTexParameteri(GL_TEXTURE_2D, GL_TEXTURE_MAG_FILTER, GL_NEAREST);
-
-        glBindFramebuffer(GL_FRAMEBUFFER, fbo);
-        glFramebufferTexture2D(GL_FRAMEBUFFER, GL_COLOR_ATTACHMENT0, GL_TEXTURE_2D, texId, 0);
-
-        if (glCheckFramebufferStatus(GL_FRAMEBUFFER) != GL_FRAMEBUFFER_COMPLETE) {
-            throw new RuntimeException("Framebuffer is not complete");
-        }
+        RenderTargetPool pool = RenderTargetPool.getInstance();
+        RenderTargetTexture target = pool.acquire(width, height);
 
         // 👇 рендер в текстуру
-        glViewport(0, 0, width, height);
+        target.bind();
         glClearColor(0, 0, 0, 0);
         glClear(GL_COLOR_BUFFER_BIT);
 
         DesktopRenderer renderer = (DesktopRenderer) D2D2.getEngine().getRenderer();
 
-        renderer.renderGroupToCurrentFrameBuffer(group, width, height); // ⬅️ тебе надо этот метод добавить
+        GpuTimer gpuTimer = GlContextManager.getGpuTimer();
+        int scope = gpuTimer.begin(GpuTimer.RENDER_TO_TEXTURE);
+        renderer.renderGroupToCurrentFrameBuffer(group, width, height);
+        gpuTimer.end(scope);
 
         // восстановим дефолтный FBO
-        glBindFramebuffer(GL_FRAMEBUFFER, 0);
+        target.unbind();
+
+        // Текстура уходит вызывающему, FBO возвращается в пул
+        int texId = target.detachTexture();
+        pool.markDetached(texId, width, height, target.getInternalFormat());
+        pool.release(target);
 
         Texture result = new Texture(texId, width, height);
 
@@ -102,5 +143,3 @@ public class RenderTargetTexture {
         return result;
     }
 }
-
-
@@ -0,0 +1,91 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.sound.Sound;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * Sound manager of a headless engine that could not open an audio device. Loaded and lazy sounds keep
+ * their settings but play nothing, so game code does not have to check for missing audio. Music cannot
+ * be streamed without a device, {@link #loadMusic} throws.
+ */
+public class SilentSoundManager extends DesktopSoundManager {
+
+    public SilentSoundManager() {
+        super(false);
+    }
+
+    @Override
+    public Sound loadSound(InputStream inputStream) {
+        try {
+            inputStream.close();
+        } catch (IOException ignored) {
+        }
+        return new SilentSound();
+    }
+
+    @Override
+    public Sound loadSound(String assetFileName) {
+        return new SilentSound();
+    }
+
+    @Override
+    public StreamingSound loadMusic(InputStream inputStream) {
+        throw new IllegalStateException("Music cannot be loaded: no audio device is available");
+    }
+
+    @Override
+    public StreamingSound loadMusic(String assetFileName) {
+        throw new IllegalStateException("Music cannot be loaded: no audio device is available (" + assetFileName + ")");
+    }
+
+    private static class SilentSound implements Sound {
+
+        private float volume = 1f;
+        private float pan;
+        private boolean disposed;
+
+        @Override
+        public void play() {
+        }
+
+        @Override
+        public void asyncPlay() {
+        }
+
+        @Override
+        public void stop() {
+        }
+
+        @Override
+        public void setVolume(float volume) {
+            if (!disposed) this.volume = volume;
+        }
+
+        @Override
+        public float getVolume() {
+            return disposed ? 0.0f : volume;
+        }
+
+        @Override
+        public void setPan(float pan) {
+            if (!disposed) this.pan = pan;
+        }
+
+        @Override
+        public float getPan() {
+            return disposed ? 0.0f : pan;
+        }
+
+        @Override
+        public void dispose() {
+            disposed = true;
+        }
+
+        @Override
+        public boolean isDisposed() {
+            return disposed;
+        }
+    }
+}
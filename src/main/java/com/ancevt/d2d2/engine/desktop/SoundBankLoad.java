@@ -0,0 +1,76 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.sound.Sound;
+
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Sounds being loaded in parallel by {@link DesktopSoundManager#loadSounds}. Loading screens poll
+ * {@link #getProgress()} once a frame; code that needs a particular effect waits on its future.
+ */
+public class SoundBankLoad {
+
+    private final Map<String, CompletableFuture<Sound>> futures = new LinkedHashMap<>();
+    private final AtomicInteger loaded = new AtomicInteger();
+    private final AtomicInteger failed = new AtomicInteger();
+    private CompletableFuture<Map<String, Sound>> all;
+
+    void add(String assetFileName, CompletableFuture<Sound> future) {
+        futures.put(assetFileName, future);
+        future.whenComplete((sound, error) -> (error == null ? loaded : failed).incrementAndGet());
+    }
+
+    void seal() {
+        all = CompletableFuture.allOf(futures.values().toArray(CompletableFuture[]::new))
+                .thenApply(ignored -> {
+                    Map<String, Sound> sounds = new LinkedHashMap<>();
+                    futures.forEach((name, future) -> sounds.put(name, future.join()));
+                    return Collections.unmodifiableMap(sounds);
+                });
+    }
+
+    /**
+     * @return futures in request order, keyed by asset name
+     */
+    public Map<String, CompletableFuture<Sound>> getFutures() {
+        return Collections.unmodifiableMap(futures);
+    }
+
+    public CompletableFuture<Sound> get(String assetFileName) {
+        return futures.get(assetFileName);
+    }
+
+    /**
+     * Completes with every sound once all are loaded, or exceptionally with the first failure.
+     */
+    public CompletableFuture<Map<String, Sound>> all() {
+        return all;
+    }
+
+    public int getTotal() {
+        return futures.size();
+    }
+
+    public int getLoaded() {
+        return loaded.get();
+    }
+
+    public int getFailed() {
+        return failed.get();
+    }
+
+    /**
+     * @return share of sounds finished, loaded or failed, 0..1
+     */
+    public float getProgress() {
+        return futures.isEmpty() ? 1f : (float) (loaded.get() + failed.get()) / futures.size();
+    }
+
+    public boolean isDone() {
+        return loaded.get() + failed.get() == futures.size();
+    }
+}
@@ -0,0 +1,122 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import lombok.Getter;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Decoded buffers of {@link LazySound}s, least recently played first. When the total PCM size goes over
+ * the budget the coldest buffers are deleted; sounds that are playing right now are never evicted, so the
+ * budget can be overshot while they finish.
+ */
+public class SoundBufferCache {
+
+    public static final String PROPERTY_BUDGET = "d2d2.sound.budget";
+    static final long DEFAULT_BUDGET_BYTES = 64L * 1024 * 1024;
+
+    // Порядок вставки = порядок использования: play() переставляет звук в конец
+    private final Map<LazySound, DesktopSound> resident = new LinkedHashMap<>();
+
+    @Getter
+    private long budgetBytes;
+    @Getter
+    private long residentBytes;
+    @Getter
+    private long evictions;
+
+    SoundBufferCache(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+    }
+
+    static long budgetFromSystemProperty() {
+        return Long.getLong(PROPERTY_BUDGET, DEFAULT_BUDGET_BYTES);
+    }
+
+    public synchronized void setBudgetBytes(long budgetBytes) {
+        this.budgetBytes = budgetBytes;
+        evict(null);
+    }
+
+    public synchronized int size() {
+        return resident.size();
+    }
+
+    /**
+     * Plays the resident buffer and marks it most recently used.
+     *
+     * @return false if the sound is not resident
+     */
+    synchronized boolean play(LazySound key) {
+        DesktopSound sound = resident.remove(key);
+        if (sound == null) return false;
+        resident.put(key, sound);
+        sound.play();
+        return true;
+    }
+
+    /**
+     * @return resident buffer without touching the LRU order, or null
+     */
+    synchronized DesktopSound peek(LazySound key) {
+        return resident.get(key);
+    }
+
+    synchronized boolean contains(LazySound key) {
+        return resident.containsKey(key);
+    }
+
+    /**
+     * Makes {@code sound} resident for {@code key}. If another thread got there first the new buffer is
+     * dropped and the resident one returned.
+     */
+    synchronized DesktopSound put(LazySound key, DesktopSound sound) {
+        DesktopSound existing = resident.get(key);
+        if (existing != null) {
+            sound.dispose();
+            return existing;
+        }
+        resident.put(key, sound);
+        residentBytes += sound.getBufferBytes();
+        evict(key);
+        return sound;
+    }
+
+    /**
+     * {@link #put} and play in one step. A playing sound is never evicted, so starting the voice under the
+     * same lock means a concurrent put cannot delete the buffer before its first play.
+     */
+    synchronized void putAndPlay(LazySound key, DesktopSound sound) {
+        put(key, sound);
+        play(key);
+    }
+
+    synchronized void remove(LazySound key) {
+        DesktopSound sound = resident.remove(key);
+        if (sound != null) {
+            residentBytes -= sound.getBufferBytes();
+            sound.dispose();
+        }
+    }
+
+    synchronized void clear() {
+        resident.values().forEach(DesktopSound::dispose);
+        resident.clear();
+        residentBytes = 0;
+    }
+
+    private void evict(LazySound keep) {
+        Iterator<Map.Entry<LazySound, DesktopSound>> iterator = resident.entrySet().iterator();
+        while (residentBytes > budgetBytes && iterator.hasNext()) {
+            Map.Entry<LazySound, DesktopSound> entry = iterator.next();
+            DesktopSound sound = entry.getValue();
+            if (entry.getKey() == keep || sound.isPlaying()) continue;
+
+            iterator.remove();
+            residentBytes -= sound.getBufferBytes();
+            sound.dispose();
+            evictions++;
+        }
+    }
+}
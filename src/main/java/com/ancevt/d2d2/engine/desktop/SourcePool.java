@@ -0,0 +1,162 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import java.util.Arrays;
+import java.util.function.IntConsumer;
+
+import static org.lwjgl.openal.AL10.*;
+
+/**
+ * Fixed set of OpenAL sources shared by all {@link DesktopSound}s. A sound takes a free source for every
+ * play, so the same effect can overlap itself; when the pool is full the lowest-priority, oldest voice is
+ * stolen. Sources are allocated once, up front.
+ */
+class SourcePool {
+
+    static final String VOICES_PROPERTY = "d2d2.audio.voices";
+    static final int DEFAULT_VOICES = 32;
+
+    /**
+     * Repeated triggers of one sound closer than this (about a frame) are merged into one voice.
+     */
+    static final long DEDUP_NANOS = 16_000_000L;
+
+    private final int[] sources;
+    private final DesktopSound[] owners;
+    private final long[] startedAt;
+
+    SourcePool(int voices) {
+        sources = new int[voices];
+        owners = new DesktopSound[voices];
+        startedAt = new long[voices];
+        alGenSources(sources);
+    }
+
+    static int voicesFromSystemProperty() {
+        return Integer.getInteger(VOICES_PROPERTY, DEFAULT_VOICES);
+    }
+
+    /**
+     * @return source the sound now plays on, or 0 if it was de-duplicated or lost to higher-priority voices
+     */
+    synchronized int play(DesktopSound sound) {
+        long now = System.nanoTime();
+        int free = -1;
+        int active = 0;
+        int oldestOwn = -1;
+        int victim = -1;
+
+        for (int i = 0; i < sources.length; i++) {
+            DesktopSound owner = owners[i];
+            if (owner != null && alGetSourcei(sources[i], AL_SOURCE_STATE) != AL_PLAYING) {
+                free(i); // доиграл
+                owner = null;
+            }
+            if (owner == null) {
+                if (free < 0) free = i;
+                continue;
+            }
+            if (owner == sound) {
+                if (now - startedAt[i] < DEDUP_NANOS) return 0;
+                active++;
+                if (oldestOwn < 0 || startedAt[i] < startedAt[oldestOwn]) oldestOwn = i;
+            }
+            if (victim < 0 || owner.getPriority() < owners[victim].getPriority()
+                    || owner.getPriority() == owners[victim].getPriority() && startedAt[i] < startedAt[victim]) {
+                victim = i;
+            }
+        }
+
+        int slot;
+        if (active >= sound.getMaxInstances()) {
+            slot = oldestOwn;
+        } else if (free >= 0) {
+            slot = free;
+        } else if (victim >= 0 && owners[victim].getPriority() <= sound.getPriority()) {
+            slot = victim;
+        } else {
+            return 0;
+        }
+        return start(slot, sound, now);
+    }
+
+    private int start(int slot, DesktopSound sound, long now) {
+        int sourceId = sources[slot];
+        alSourceStop(sourceId);
+        alSourcei(sourceId, AL_BUFFER, sound.getBufferId());
+        alSourcef(sourceId, AL_GAIN, sound.getVolume());
+        alSource3f(sourceId, AL_POSITION, sound.getPan(), 0, 0);
+        alSourcePlay(sourceId);
+        owners[slot] = sound;
+        startedAt[slot] = now;
+        return sourceId;
+    }
+
+    /**
+     * Runs {@code action} for every source the sound currently owns.
+     */
+    synchronized void forEachVoice(DesktopSound sound, IntConsumer action) {
+        for (int i = 0; i < sources.length; i++) {
+            if (owners[i] == sound) action.accept(sources[i]);
+        }
+    }
+
+    synchronized void stop(DesktopSound sound) {
+        for (int i = 0; i < sources.length; i++) {
+            if (owners[i] == sound) free(i);
+        }
+    }
+
+    /**
+     * Stops the sound and detaches its buffer from every source, so the buffer can be deleted.
+     */
+    synchronized void release(DesktopSound sound) {
+        stop(sound);
+        // Слоты без владельца уже отвязаны в free(); проверка на случай буфера, привязанного в обход пула
+        int bufferId = sound.getBufferId();
+        if (bufferId == 0) return;
+        for (int sourceId : sources) {
+            if (alGetSourcei(sourceId, AL_BUFFER) == bufferId) {
+                alSourceStop(sourceId);
+                alSourcei(sourceId, AL_BUFFER, 0);
+            }
+        }
+    }
+
+    /**
+     * Stops the slot's source and detaches its buffer: a buffer still attached to any source cannot be
+     * deleted ({@code AL_INVALID_OPERATION}), even after the voice has finished.
+     */
+    private void free(int slot) {
+        alSourceStop(sources[slot]);
+        alSourcei(sources[slot], AL_BUFFER, 0);
+        owners[slot] = null;
+    }
+
+    synchronized boolean isPlaying(DesktopSound sound) {
+        for (int i = 0; i < sources.length; i++) {
+            if (owners[i] == sound && alGetSourcei(sources[i], AL_SOURCE_STATE) == AL_PLAYING) return true;
+        }
+        return false;
+    }
+
+    synchronized int getActiveVoices() {
+        int active = 0;
+        for (int i = 0; i < sources.length; i++) {
+            if (owners[i] != null && alGetSourcei(sources[i], AL_SOURCE_STATE) == AL_PLAYING) active++;
+        }
+        return active;
+    }
+
+    int getVoices() {
+        return sources.length;
+    }
+
+    synchronized void dispose() {
+        for (int sourceId : sources) {
+            alSourceStop(sourceId);
+            alSourcei(sourceId, AL_BUFFER, 0);
+        }
+        alDeleteSources(sources);
+        Arrays.fill(owners, null);
+    }
+}
@@ -0,0 +1,348 @@
+package com.ancevt.d2d2.engine.desktop;
+
+import com.ancevt.d2d2.asset.Assets;
+import com.ancevt.d2d2.sound.Sound;
+import lombok.Getter;
+import lombok.SneakyThrows;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ShortBuffer;
+import java.util.ArrayDeque;
+import java.util.function.Supplier;
+
+import static com.ancevt.d2d2.D2D2.log;
+import static org.lwjgl.openal.AL10.*;
+import static org.lwjgl.openal.AL11.AL_SAMPLE_OFFSET;
+
+/**
+ * Music that is decoded while it plays. A background thread keeps a small queue of OpenAL buffers
+ * ({@value #BUFFER_COUNT} x {@value #BUFFER_MILLIS} ms) filled, so memory stays constant and playback starts
+ * without decoding the whole file. Looping and seeking reopen the compressed stream.
+ * <p>
+ * The thread decodes without holding the lock, so control calls never wait for the decoder, and it sleeps
+ * in {@code wait()} while the track is paused or stopped.
+ */
+public class StreamingSound implements Sound {
+
+    static final int BUFFER_COUNT = 4;
+    static final int BUFFER_MILLIS = 250;
+    // Очередь держит секунду звука, так что опрашивать AL чаще незачем
+    private static final long POLL_MILLIS = BUFFER_MILLIS / 5;
+
+    private final Supplier<InputStream> source;
+
+    @Getter
+    private final int sourceId;
+    private final int[] bufferIds = new int[BUFFER_COUNT];
+    // Первый сэмпл-фрейм трека в каждом буфере — для точной позиции воспроизведения
+    private final long[] bufferStartFrame = new long[BUFFER_COUNT];
+    private final ArrayDeque<Integer> queued = new ArrayDeque<>(BUFFER_COUNT);
+
+    private Mp3StreamDecoder decoder;
+    private volatile long decodedFrame;
+    private short[] staging;
+    private ShortBuffer alStaging;
+    @Getter
+    private final int channels;
+    @Getter
+    private final int sampleRate;
+
+    private final Thread streamThread;
+
+    @Getter
+    private volatile boolean looping;
+    private volatile boolean playing;
+    private boolean sourceStarted;
+    private volatile long seekFrame = -1;
+    private volatile boolean disposed;
+
+    public StreamingSound(String assetPath) {
+        this(() -> Assets.getAsset(assetPath).getInputStream());
+    }
+
+    /**
+     * The stream is read into memory once (compressed), so it can be reopened for looping and seeking.
+     */
+    @SneakyThrows
+    public StreamingSound(InputStream inputStream) {
+        this(bytesSource(inputStream.readAllBytes()));
+    }
+
+    @SneakyThrows
+    public StreamingSound(Supplier<InputStream> source) {
+        this.source = source;
+
+        decoder = new Mp3StreamDecoder(source.get());
+        channels = decoder.getChannels();
+        sampleRate = decoder.getSampleRate();
+
+        int samplesPerBuffer = sampleRate * BUFFER_MILLIS / 1000 * channels;
+        staging = new short[samplesPerBuffer];
+        alStaging = MemoryUtil.memAllocShort(samplesPerBuffer);
+
+        alGenBuffers(bufferIds);
+        sourceId = alGenSources();
+        alSourcef(sourceId, AL_GAIN, 1f);
+
+        streamThread = new Thread(this::streamLoop, "d2d2-music-stream");
+        streamThread.setDaemon(true);
+        streamThread.start();
+    }
+
+    private static Supplier<InputStream> bytesSource(byte[] bytes) {
+        return () -> new ByteArrayInputStream(bytes);
+    }
+
+    // === Управление (любой поток) ===
+
+    @Override
+    public void play() {
+        if (disposed) return;
+        synchronized (this) {
+            playing = true;
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void asyncPlay() {
+        play();
+    }
+
+    /**
+     * Stops and rewinds to the start, like {@code alSourceStop} on a static sound.
+     */
+    @Override
+    public void stop() {
+        if (disposed) return;
+        synchronized (this) {
+            playing = false;
+            seekFrame = 0;
+            notifyAll();
+        }
+    }
+
+    public void pause() {
+        if (disposed) return;
+        synchronized (this) {
+            playing = false;
+            notifyAll();
+        }
+    }
+
+    public void setLooping(boolean looping) {
+        this.looping = looping;
+    }
+
+    public boolean isPlaying() {
+        return playing;
+    }
+
+    public void seek(long millis) {
+        if (disposed) return;
+        synchronized (this) {
+            seekFrame = Math.max(0, millis) * sampleRate / 1000;
+            notifyAll();
+        }
+    }
+
+    public synchronized long getPositionMillis() {
+        if (disposed) return 0;
+        if (seekFrame >= 0) return seekFrame * 1000 / sampleRate;
+        Integer front = queued.peekFirst();
+        if (front == null) return decodedFrame * 1000 / sampleRate;
+        long frame = bufferStartFrame[indexOf(front)] + alGetSourcei(sourceId, AL_SAMPLE_OFFSET);
+        return frame * 1000 / sampleRate;
+    }
+
+    @Override
+    public void setVolume(float volume) {
+        if (!disposed) alSourcef(sourceId, AL_GAIN, volume);
+    }
+
+    @Override
+    public float getVolume() {
+        return disposed ? 0.0f : alGetSourcef(sourceId, AL_GAIN);
+    }
+
+    @Override
+    public void setPan(float pan) {
+        if (!disposed) alSource3f(sourceId, AL_POSITION, pan, 0, 0);
+    }
+
+    @Override
+    public float getPan() {
+        if (disposed) return 0.0f;
+        float[] position = new float[3];
+        alGetSource3f(sourceId, AL_POSITION, position, new float[1], new float[1]);
+        return position[0];
+    }
+
+    @Override
+    public void dispose() {
+        if (disposed) return;
+        synchronized (this) {
+            disposed = true;
+            notifyAll();
+        }
+        try {
+            streamThread.join(1000);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    @Override
+    public boolean isDisposed() {
+        return disposed;
+    }
+
+    // === Поток стриминга ===
+
+    private void streamLoop() {
+        try {
+            while (true) {
+                long seek;
+                synchronized (this) {
+                    // Пауза или стоп: источник на паузе, поток спит до следующей команды
+                    while (!disposed && !playing && seekFrame < 0) {
+                        if (sourceStarted) {
+                            alSourcePause(sourceId);
+                            sourceStarted = false;
+                        }
+                        wait();
+                    }
+                    if (disposed) break;
+
+                    seek = seekFrame;
+                    seekFrame = -1;
+                    if (seek >= 0) resetSource();
+                }
+
+                if (seek >= 0) reopen(seek);
+                if (playing) stream();
+
+                synchronized (this) {
+                    if (!disposed && playing && seekFrame < 0) wait(POLL_MILLIS);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error(StreamingSound.class, "Music stream failed", e);
+            playing = false;
+        } finally {
+            release();
+        }
+    }
+
+    /**
+     * Refills the played buffers and keeps the source running. Decoding happens outside the lock; the lock is
+     * taken only to change the queue that {@link #getPositionMillis()} reads.
+     */
+    private void stream() throws IOException {
+        synchronized (this) {
+            // Отыгранные буферы — обратно в очередь со свежими данными
+            int processed = alGetSourcei(sourceId, AL_BUFFERS_PROCESSED);
+            for (int i = 0; i < processed; i++) {
+                alSourceUnqueueBuffers(sourceId);
+                queued.pollFirst();
+            }
+        }
+
+        // Очередь меняет только этот поток, так что свободный буфер никто не займёт
+        while (queued.size() < BUFFER_COUNT && playing && seekFrame < 0) {
+            int bufferId = freeBuffer();
+            long startFrame = decodedFrame;
+            if (!fill(bufferId)) break;
+            synchronized (this) {
+                bufferStartFrame[indexOf(bufferId)] = startFrame;
+                alSourceQueueBuffers(sourceId, bufferId);
+                queued.addLast(bufferId);
+            }
+        }
+
+        boolean ended;
+        synchronized (this) {
+            // Команда пришла во время декодирования — её обработает следующий проход
+            if (!playing || seekFrame >= 0) return;
+
+            ended = queued.isEmpty();
+            if (ended) {
+                // Трек закончился и всё доиграно
+                playing = false;
+                sourceStarted = false;
+            } else if (alGetSourcei(sourceId, AL_SOURCE_STATE) != AL_PLAYING) {
+                // Первый запуск, продолжение после паузы или опустошение очереди
+                alSourcePlay(sourceId);
+                sourceStarted = true;
+            }
+        }
+        if (ended) reopen(0);
+    }
+
+    private boolean fill(int bufferId) throws IOException {
+        int samples = decoder.read(staging, 0, staging.length);
+        decodedFrame += samples / channels;
+
+        while (samples < staging.length && looping) {
+            // Склейка конца и начала трека в одном буфере — без паузы на стыке
+            reopen(0);
+            int n = decoder.read(staging, samples, staging.length - samples);
+            if (n == 0) break;
+            samples += n;
+            decodedFrame += n / channels;
+        }
+        if (samples == 0) return false;
+
+        alStaging.clear();
+        alStaging.put(staging, 0, samples).flip();
+        alBufferData(bufferId, channels == 1 ? AL_FORMAT_MONO16 : AL_FORMAT_STEREO16, alStaging, sampleRate);
+        return true;
+    }
+
+    private int freeBuffer() {
+        for (int id : bufferIds) {
+            if (!queued.contains(id)) return id;
+        }
+        throw new IllegalStateException("No free stream buffer");
+    }
+
+    private int indexOf(int bufferId) {
+        for (int i = 0; i < bufferIds.length; i++) {
+            if (bufferIds[i] == bufferId) return i;
+        }
+        return 0;
+    }
+
+    private void resetSource() {
+        alSourceStop(sourceId);
+        alSourcei(sourceId, AL_BUFFER, 0); // отвязывает все буферы очереди
+        queued.clear();
+        sourceStarted = false;
+    }
+
+    private void reopen(long frame) throws IOException {
+        decoder.close();
+        decoder = new Mp3StreamDecoder(source.get());
+        decodedFrame = decoder.skipFrames(frame);
+    }
+
+    private void release() {
+        synchronized (this) {
+            disposed = true;
+            resetSource();
+            alDeleteSources(sourceId);
+            alDeleteBuffers(bufferIds);
+            MemoryUtil.memFree(alStaging);
+            try {
+                decoder.close();
+            } catch (IOException e) {
+                log.error(StreamingSound.class, "Could not close music stream", e);
+            }
+        }
+    }
+}
@@ -0,0 +1,22 @@
+package com.ancevt.d2d2.engine.desktop.benchmark;
+
+import com.ancevt.d2d2.scene.Stage;
+
+/**
+ * Reference scene for {@link SceneBenchmark}. Scenes must be deterministic: same nodes and same animation
+ * for the same frame number, so runs on different engine versions draw identical frames.
+ */
+public interface BenchmarkScene {
+
+    String getName();
+
+    void setUp(Stage stage);
+
+    /**
+     * Called before every frame, warmup included.
+     */
+    default void update(int frame) {
+    }
+
+    void tearDown(Stage stage);
+}
@@ -0,0 +1,277 @@
+package com.ancevt.d2d2.engine.desktop.benchmark;
+
+import com.ancevt.d2d2.D2D2;
+import com.ancevt.d2d2.engine.desktop.AwtBitmapFontGenerator;
+import com.ancevt.d2d2.engine.desktop.node.DesktopNodeFactory;
+import com.ancevt.d2d2.engine.desktop.render.ShaderSources;
+import com.ancevt.d2d2.scene.BitmapCanvas;
+import com.ancevt.d2d2.scene.Group;
+import com.ancevt.d2d2.scene.Sprite;
+import com.ancevt.d2d2.scene.Stage;
+import com.ancevt.d2d2.scene.shader.ShaderProgram;
+import com.ancevt.d2d2.scene.shape.LineBatch;
+import com.ancevt.d2d2.scene.text.BitmapFont;
+import com.ancevt.d2d2.scene.text.BitmapText;
+import com.ancevt.d2d2.scene.texture.TextureRegion;
+
+import java.awt.Font;
+import java.util.List;
+import java.util.Random;
+import java.util.function.Supplier;
+
+/**
+ * The standard scenes. All randomness is seeded, sizes match a 1280x720 canvas.
+ */
+public final class BenchmarkScenes {
+
+    static final int WIDTH = 1280;
+    static final int HEIGHT = 720;
+    private static final long SEED = 42L;
+
+    private static final DesktopNodeFactory NODES = new DesktopNodeFactory();
+
+    private static final String LOREM = "Lorem ipsum dolor sit amet, consectetur adipiscing elit, sed do eiusmod " +
+            "tempor incididunt ut labore et dolore magna aliqua. Ut enim ad minim veniam, quis nostrud exercitation.";
+
+    private static final String GRAYSCALE_FRAGMENT = """
+            #version 330 core
+            in vec2 vTexCoord;
+            in vec4 vColor;
+            out vec4 FragColor;
+            uniform sampler2D uTexture;
+            void main() {
+                vec4 c = texture(uTexture, vTexCoord) * vColor;
+                float l = dot(c.rgb, vec3(0.299, 0.587, 0.114));
+                FragColor = vec4(l, l, l, c.a);
+            }
+            """;
+
+    private static final String PULSE_FRAGMENT = """
+            #version 330 core
+            in vec2 vTexCoord;
+            in vec4 vColor;
+            out vec4 FragColor;
+            uniform sampler2D uTexture;
+            """ + ShaderSources.FRAME_UNIFORMS_BLOCK + """
+            void main() {
+                vec4 c = texture(uTexture, vTexCoord) * vColor;
+                FragColor = vec4(c.rgb * (0.75 + 0.25 * sin(uTime * 4.0)), c.a);
+            }
+            """;
+
+    private BenchmarkScenes() {
+    }
+
+    /**
+     * Default suite, all five scenes, texts in the {@link #defaultTextFactory()} font.
+     */
+    public static List<BenchmarkScene> standardSuite() {
+        return standardSuite(null);
+    }
+
+    /**
+     * Default suite with texts created by {@code textFactory}, e.g. in the application's own font;
+     * null means {@link #defaultTextFactory()}.
+     */
+    public static List<BenchmarkScene> standardSuite(Supplier<BitmapText> textFactory) {
+        Supplier<BitmapText> texts = textFactory != null ? textFactory : defaultTextFactory();
+        return List.of(bunnymark(100_000), wrappedTexts(5_000, texts), lineBatch(50_000),
+                mixedAtlases(20_000), animatedCanvas(512, 512));
+    }
+
+    /**
+     * Texts in a 14 px logical sans-serif font rasterised by {@link AwtBitmapFontGenerator}, so the suite needs
+     * no font asset. The font is created on the first text, on the GL thread while the scene is set up.
+     */
+    public static Supplier<BitmapText> defaultTextFactory() {
+        return new Supplier<>() {
+            private BitmapFont font;
+
+            @Override
+            public BitmapText get() {
+                if (font == null) font = AwtBitmapFontGenerator.generate(new Font(Font.SANS_SERIF, Font.PLAIN, 14));
+                return new BitmapText(font);
+            }
+        };
+    }
+
+    /**
+     * Bouncing sprites of one texture: one batch-friendly draw stream, bound by vertex generation.
+     */
+    public static BenchmarkScene bunnymark(int count) {
+        return new GroupScene("bunnymark-" + count) {
+            private float[] vx, vy;
+            private Sprite[] sprites;
+
+            @Override
+            void build(Group root) {
+                TextureRegion region = D2D2.getTextureManager().loadTexture("test.png").createTextureRegion();
+                Random random = new Random(SEED);
+                sprites = new Sprite[count];
+                vx = new float[count];
+                vy = new float[count];
+                for (int i = 0; i < count; i++) {
+                    Sprite sprite = NODES.createSprite(region);
+                    sprite.setXY(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+                    vx[i] = random.nextFloat() * 8 - 4;
+                    vy[i] = random.nextFloat() * 8 - 4;
+                    sprites[i] = sprite;
+                    root.addChild(sprite);
+                }
+            }
+
+            @Override
+            public void update(int frame) {
+                for (int i = 0; i < sprites.length; i++) {
+                    Sprite s = sprites[i];
+                    float x = s.getX() + vx[i];
+                    float y = s.getY() + vy[i];
+                    if (x < 0 || x > WIDTH) vx[i] = -vx[i];
+                    if (y < 0 || y > HEIGHT) vy[i] = -vy[i];
+                    s.setXY(x, y);
+                }
+            }
+        };
+    }
+
+    /**
+     * Word-wrapped paragraphs: glyph layout on every frame.
+     */
+    public static BenchmarkScene wrappedTexts(int count, Supplier<BitmapText> textFactory) {
+        return new GroupScene("wrapped-texts-" + count) {
+            @Override
+            void build(Group root) {
+                Random random = new Random(SEED);
+                for (int i = 0; i < count; i++) {
+                    BitmapText text = textFactory.get();
+                    text.setText(LOREM.substring(random.nextInt(LOREM.length() / 2)));
+                    text.setWordWrap(true);
+                    text.setSize(160, 80);
+                    text.setXY(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+                    root.addChild(text);
+                }
+            }
+        };
+    }
+
+    /**
+     * One LineBatch of random segments, rotated every frame.
+     */
+    public static BenchmarkScene lineBatch(int lines) {
+        return new GroupScene("line-batch-" + lines) {
+            private LineBatch batch;
+
+            @Override
+            void build(Group root) {
+                Random random = new Random(SEED);
+                batch = NODES.createLineBatch();
+                for (int i = 0; i < lines; i++) {
+                    batch.addLine(
+                            random.nextFloat() * WIDTH - WIDTH / 2f, random.nextFloat() * HEIGHT - HEIGHT / 2f,
+                            random.nextFloat() * WIDTH - WIDTH / 2f, random.nextFloat() * HEIGHT - HEIGHT / 2f
+                    );
+                }
+                batch.setXY(WIDTH / 2f, HEIGHT / 2f);
+                root.addChild(batch);
+            }
+
+            @Override
+            public void update(int frame) {
+                batch.setRotation(frame * 0.5f);
+            }
+        };
+    }
+
+    /**
+     * Sprites alternating two atlases and three programs in runs of 16: exercises texture and shader flushes.
+     */
+    public static BenchmarkScene mixedAtlases(int count) {
+        return new GroupScene("mixed-atlases-" + count) {
+            private ShaderProgram grayscale;
+            private ShaderProgram pulse;
+
+            @Override
+            void build(Group root) {
+                TextureRegion[] regions = {
+                        D2D2.getTextureManager().loadTexture("test.png").createTextureRegion(),
+                        D2D2.getTextureManager().loadTexture("test2.png").createTextureRegion()
+                };
+                grayscale = D2D2.getEngine().createShaderProgram(ShaderSources.VERTEX_SHADER, GRAYSCALE_FRAGMENT);
+                pulse = D2D2.getEngine().createShaderProgram(ShaderSources.VERTEX_SHADER, PULSE_FRAGMENT);
+                ShaderProgram[] programs = {null, grayscale, pulse};
+
+                Random random = new Random(SEED);
+                for (int i = 0; i < count; i++) {
+                    int run = i / 16;
+                    Sprite sprite = NODES.createSprite(regions[run % 2]);
+                    sprite.setShaderProgram(programs[run % 3]);
+                    sprite.setXY(random.nextFloat() * WIDTH, random.nextFloat() * HEIGHT);
+                    sprite.setRotation(random.nextFloat() * 360);
+                    root.addChild(sprite);
+                }
+            }
+
+            @Override
+            public void tearDown(Stage stage) {
+                super.tearDown(stage);
+                grayscale.destroy();
+                pulse.destroy();
+            }
+        };
+    }
+
+    /**
+     * Canvas repainted in full every frame: texture upload bandwidth.
+     */
+    public static BenchmarkScene animatedCanvas(int width, int height) {
+        return new GroupScene("animated-canvas-" + width + "x" + height) {
+            private BitmapCanvas canvas;
+
+            @Override
+            void build(Group root) {
+                canvas = NODES.createBitmapCanvas(width, height);
+                canvas.setXY((WIDTH - width) / 2f, (HEIGHT - height) / 2f);
+                root.addChild(canvas);
+            }
+
+            @Override
+            public void update(int frame) {
+                for (int y = 0; y < height; y++) {
+                    for (int x = 0; x < width; x++) {
+                        int v = (x + y + frame * 4) & 0xFF;
+                        canvas.setPixel(x, y, 0xFF000000 | v << 16 | (255 - v) << 8 | (x ^ y) & 0xFF);
+                    }
+                }
+            }
+        };
+    }
+
+    private abstract static class GroupScene implements BenchmarkScene {
+        private final String name;
+        private Group root;
+
+        GroupScene(String name) {
+            this.name = name;
+        }
+
+        abstract void build(Group root);
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public void setUp(Stage stage) {
+            root = NODES.createGroup();
+            build(root);
+            stage.addChild(root);
+        }
+
+        @Override
+        public void tearDown(Stage stage) {
+            stage.removeChild(root);
+            root = null;
+        }
+    }
+}
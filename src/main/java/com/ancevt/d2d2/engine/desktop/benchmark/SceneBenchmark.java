@@ -0,0 +1,221 @@
+package com.ancevt.d2d2.engine.desktop.benchmark;
+
+import com.ancevt.d2d2.D2D2;
+import com.ancevt.d2d2.engine.desktop.DesktopEngine;
+import com.ancevt.d2d2.engine.desktop.render.RenderStats;
+import lombok.Getter;
+import lombok.Setter;
+import lombok.SneakyThrows;
+import org.lwjgl.glfw.GLFW;
+import org.lwjgl.opengl.GL11;
+
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * Runs {@link BenchmarkScene}s through the real {@code DesktopRenderer} of a headless engine for a fixed number
+ * of frames and reports frame-time percentiles, draw calls and allocation rate as JSON.
+ * <p>
+ * Frames are driven with {@link DesktopEngine#step()} followed by {@code glFinish}, so frame time includes
+ * the GPU work and does not depend on vsync. For software GL use Mesa's {@code LIBGL_ALWAYS_SOFTWARE=1}.
+ * Allocation is counted on the render thread only, within {@code step()}.
+ *
+ * <pre>{@code
+ * SceneBenchmark benchmark = new SceneBenchmark(engine);
+ * benchmark.writeJson(Path.of("scenes.json"), benchmark.runAll(BenchmarkScenes.standardSuite()));
+ * }</pre>
+ * From the command line {@link #main} runs the standard suite on its own headless engine:
+ * <pre>{@code
+ * mvn compile exec:java -Dexec.mainClass=com.ancevt.d2d2.engine.desktop.benchmark.SceneBenchmark \
+ *     -Dexec.args="scenes.json 1000"
+ * }</pre>
+ */
+public class SceneBenchmark {
+
+    @Getter
+    @Setter
+    private int warmupFrames = 120;
+
+    @Getter
+    @Setter
+    private int frames = 1000;
+
+    private final DesktopEngine engine;
+
+    public SceneBenchmark(DesktopEngine engine) {
+        if (!engine.isHeadless()) {
+            throw new IllegalStateException("Scene benchmarks need a headless engine (-D" + DesktopEngine.HEADLESS_PROPERTY + "=true)");
+        }
+        this.engine = engine;
+    }
+
+    public record Result(String scene,
+                         int frames,
+                         double meanMillis,
+                         double p50Millis,
+                         double p90Millis,
+                         double p99Millis,
+                         double maxMillis,
+                         double drawCallsPerFrame,
+                         double quadsPerFrame,
+                         double gpuMeanMillis,
+                         double allocatedBytesPerFrame,
+                         double allocationMegabytesPerSecond) {
+    }
+
+    /**
+     * Arguments: optional JSON output file (results go to stdout either way) and optional frame count.
+     */
+    public static void main(String[] args) {
+        DesktopEngine engine = new DesktopEngine(BenchmarkScenes.WIDTH, BenchmarkScenes.HEIGHT, "d2d2-scene-benchmark", true);
+        D2D2.init(engine);
+
+        SceneBenchmark benchmark = new SceneBenchmark(engine);
+        if (args.length > 1) benchmark.setFrames(Integer.parseInt(args[1]));
+
+        List<Result> results = benchmark.runAll(BenchmarkScenes.standardSuite());
+        System.out.print(benchmark.toJson(results));
+        if (args.length > 0) benchmark.writeJson(Path.of(args[0]), results);
+
+        engine.getSoundManager().cleanup();
+        GLFW.glfwTerminate();
+    }
+
+    public List<Result> runAll(List<BenchmarkScene> scenes) {
+        List<Result> results = new ArrayList<>(scenes.size());
+        for (BenchmarkScene scene : scenes) {
+            Result result = run(scene);
+            log.info(SceneBenchmark.class, "%s: p50 %.2f ms, p99 %.2f ms, %.0f draw calls".formatted(
+                    result.scene(), result.p50Millis(), result.p99Millis(), result.drawCallsPerFrame()));
+            results.add(result);
+        }
+        return results;
+    }
+
+    public Result run(BenchmarkScene scene) {
+        RenderStats stats = engine.getRenderer().getRenderStats();
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+
+        scene.setUp(engine.getStage());
+        try {
+            int frame = 0;
+            for (int i = 0; i < warmupFrames; i++) {
+                scene.update(frame++);
+                stepAndFinish();
+            }
+
+            long[] frameNanos = new long[frames];
+            long drawCalls = 0;
+            long quads = 0;
+            long gpuNanos = 0;
+            long allocated = 0;
+
+            for (int i = 0; i < frames; i++) {
+                scene.update(frame++);
+
+                long allocatedBefore = threads.getCurrentThreadAllocatedBytes();
+                long start = System.nanoTime();
+                stepAndFinish();
+                frameNanos[i] = System.nanoTime() - start;
+                allocated += threads.getCurrentThreadAllocatedBytes() - allocatedBefore;
+
+                RenderStats.Frame last = stats.getLastFrame();
+                drawCalls += last.drawCalls();
+                quads += last.quads();
+                gpuNanos += last.gpuFrameNanos();
+            }
+
+            long total = 0;
+            for (long n : frameNanos) total += n;
+            Arrays.sort(frameNanos);
+
+            return new Result(
+                    scene.getName(),
+                    frames,
+                    millis(total / (double) frames),
+                    millis(percentile(frameNanos, 50)),
+                    millis(percentile(frameNanos, 90)),
+                    millis(percentile(frameNanos, 99)),
+                    millis(frameNanos[frames - 1]),
+                    drawCalls / (double) frames,
+                    quads / (double) frames,
+                    millis(gpuNanos / (double) frames),
+                    allocated / (double) frames,
+                    allocated / (total / 1_000_000_000.0) / (1024 * 1024)
+            );
+        } finally {
+            scene.tearDown(engine.getStage());
+        }
+    }
+
+    private void stepAndFinish() {
+        engine.step();
+        GL11.glFinish();
+    }
+
+    // Nearest-rank
+    private static long percentile(long[] sorted, double percentile) {
+        int rank = (int) Math.ceil(percentile / 100.0 * sorted.length);
+        return sorted[Math.max(0, rank - 1)];
+    }
+
+    private static double millis(double nanos) {
+        return nanos / 1_000_000.0;
+    }
+
+    @SneakyThrows
+    public void writeJson(Path path, List<Result> results) {
+        Files.writeString(path, toJson(results));
+    }
+
+    public String toJson(List<Result> results) {
+        StringBuilder sb = new StringBuilder();
+        sb.append("{\n");
+        sb.append("  \"engineVersion\": ").append(quote(DesktopEngine.class.getPackage().getImplementationVersion())).append(",\n");
+        sb.append("  \"javaVersion\": ").append(quote(System.getProperty("java.version"))).append(",\n");
+        sb.append("  \"glRenderer\": ").append(quote(GL11.glGetString(GL11.GL_RENDERER))).append(",\n");
+        sb.append("  \"glVersion\": ").append(quote(GL11.glGetString(GL11.GL_VERSION))).append(",\n");
+        sb.append("  \"canvasWidth\": ").append(engine.getCanvasWidth()).append(",\n");
+        sb.append("  \"canvasHeight\": ").append(engine.getCanvasHeight()).append(",\n");
+        sb.append("  \"warmupFrames\": ").append(warmupFrames).append(",\n");
+        sb.append("  \"scenes\": [");
+
+        for (int i = 0; i < results.size(); i++) {
+            Result r = results.get(i);
+            sb.append(i == 0 ? "\n" : ",\n");
+            sb.append("    {");
+            sb.append("\"scene\": ").append(quote(r.scene()));
+            sb.append(", \"frames\": ").append(r.frames());
+            field(sb, "meanMillis", r.meanMillis());
+            field(sb, "p50Millis", r.p50Millis());
+            field(sb, "p90Millis", r.p90Millis());
+            field(sb, "p99Millis", r.p99Millis());
+            field(sb, "maxMillis", r.maxMillis());
+            field(sb, "drawCallsPerFrame", r.drawCallsPerFrame());
+            field(sb, "quadsPerFrame", r.quadsPerFrame());
+            field(sb, "gpuMeanMillis", r.gpuMeanMillis());
+            field(sb, "allocatedBytesPerFrame", r.allocatedBytesPerFrame());
+            field(sb, "allocationMegabytesPerSecond", r.allocationMegabytesPerSecond());
+            sb.append('}');
+        }
+
+        sb.append("\n  ]\n}\n");
+        return sb.toString();
+    }
+
+    private static void field(StringBuilder sb, String name, double value) {
+        sb.append(", \"").append(name).append("\": ").append(String.format(Locale.ROOT, "%.4f", value));
+    }
+
+    private static String quote(String s) {
+        if (s == null) return "null";
+        return '"' + s.replace("\\", "\\\\").replace("\"", "\\\"") + '"';
+    }
+}
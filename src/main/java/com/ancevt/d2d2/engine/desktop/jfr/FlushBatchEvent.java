@@ -0,0 +1,25 @@
+package com.ancevt.d2d2.engine.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+@Name("com.ancevt.d2d2.FlushBatch")
+@Label("Flush Batch")
+@Category({"D2D2", "Render"})
+@StackTrace(false)
+public final class FlushBatchEvent extends Event {
+
+    @Label("Quads")
+    public int quads;
+
+    @Label("Bytes")
+    @DataAmount
+    public long bytes;
+
+    @Label("Reason")
+    public String reason;
+}
@@ -0,0 +1,46 @@
+package com.ancevt.d2d2.engine.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+
+/**
+ * One phase of a frame of the render loop. The VERTICES phase covers the whole draw queue,
+ * so the {@link FlushBatchEvent}s of the frame are nested inside it.
+ */
+@Name("com.ancevt.d2d2.FramePhase")
+@Label("Frame Phase")
+@Category({"D2D2", "Render"})
+@Description("Phase of an engine frame")
+@StackTrace(false)
+public final class FramePhaseEvent extends Event {
+
+    public static final String TIMERS = "timers";
+    public static final String TICK = "tick";
+    public static final String PRE_FRAME = "preFrame";
+    public static final String TRAVERSAL = "traversal";
+    public static final String VERTICES = "vertices";
+    public static final String POST_FRAME = "postFrame";
+    public static final String SWAP = "swap";
+    public static final String POLL = "poll";
+
+    @Label("Phase")
+    public String phase;
+
+    @Label("Frame")
+    public long frameIndex;
+
+    /**
+     * Starts timing a phase. Without an active recording this is a plain allocation that escape analysis removes.
+     */
+    public static FramePhaseEvent start(String phase, long frameIndex) {
+        FramePhaseEvent event = new FramePhaseEvent();
+        event.phase = phase;
+        event.frameIndex = frameIndex;
+        event.begin();
+        return event;
+    }
+}
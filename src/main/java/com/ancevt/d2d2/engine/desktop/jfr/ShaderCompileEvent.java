@@ -0,0 +1,21 @@
+package com.ancevt.d2d2.engine.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.ancevt.d2d2.ShaderCompile")
+@Label("Shader Compile")
+@Category({"D2D2", "Render"})
+public final class ShaderCompileEvent extends Event {
+
+    @Label("Program Id")
+    public int programId;
+
+    @Label("Binary Cache Hit")
+    public boolean cacheHit;
+
+    @Label("Source Length")
+    public int sourceLength;
+}
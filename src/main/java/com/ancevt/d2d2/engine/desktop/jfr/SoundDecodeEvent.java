@@ -0,0 +1,29 @@
+package com.ancevt.d2d2.engine.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.ancevt.d2d2.SoundDecode")
+@Label("Sound Decode")
+@Category({"D2D2", "Audio"})
+public final class SoundDecodeEvent extends Event {
+
+    @Label("Format")
+    public String format;
+
+    @Label("Channels")
+    public int channels;
+
+    @Label("Sample Rate")
+    public int sampleRate;
+
+    @Label("Samples")
+    public long samples;
+
+    @Label("PCM Bytes")
+    @DataAmount
+    public long bytes;
+}
@@ -0,0 +1,24 @@
+package com.ancevt.d2d2.engine.desktop.jfr;
+
+import jdk.jfr.Category;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+@Name("com.ancevt.d2d2.TextureLoad")
+@Label("Texture Load")
+@Category({"D2D2", "Assets"})
+public final class TextureLoadEvent extends Event {
+
+    @Label("Texture Id")
+    public int textureId;
+
+    @Label("Width")
+    public int width;
+
+    @Label("Height")
+    public int height;
+
+    @Label("Software")
+    public boolean software;
+}
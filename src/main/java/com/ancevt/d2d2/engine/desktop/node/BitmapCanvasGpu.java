@@ -2,7 +2,9 @@ package com.ancevt.d2d2.engine.desktop.node;
 
 import com.ancevt.d2d2.scene.AbstractNode;
 import com.ancevt.d2d2.scene.BitmapCanvas;
+import com.ancevt.d2d2.scene.texture.Texture;
 import lombok.Getter;
+import lombok.Setter;
 import org.lwjgl.BufferUtils;
 
 import java.nio.ByteBuffer;
@@ -15,6 +17,13 @@ public class BitmapCanvasGpu extends AbstractNode implements BitmapCanvas {
     @Getter
     private boolean dirty = true;
 
+    /**
+     * GL texture the renderer keeps the pixels in, created on the first frame and updated only when dirty.
+     */
+    @Getter
+    @Setter
+    private Texture texture;
+
     public BitmapCanvasGpu(int width, int height) {
         this.width = width;
         this.height = height;
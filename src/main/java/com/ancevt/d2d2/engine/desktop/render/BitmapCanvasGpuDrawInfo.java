@@ -13,7 +13,7 @@ public class BitmapCanvasGpuDrawInfo implements DrawInfo {
     private final float a, b, c, d, e, f;
     private final float alpha;
 
-    private Texture texture;
+    private final int textureId;
 
     public BitmapCanvasGpuDrawInfo(BitmapCanvasGpu canvas,
                                    float a, float b, float c,
@@ -28,36 +28,49 @@ public class BitmapCanvasGpuDrawInfo implements DrawInfo {
         this.f = f;
         this.alpha = alpha;
 
-        this.texture = DesktopTextureManager.loadTextureInternal(
-                canvas.getWidthInt(), canvas.getHeightInt());
-        DesktopTextureManager.bindTexture(texture);
-
-        GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8,
-                canvas.getWidthInt(), canvas.getHeightInt(),
-                0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, canvas.getBuffer());
+        Texture texture = canvas.getTexture();
+        this.textureId = texture != null ? texture.getId() : 0;
     }
 
-    @Override
-    public ShaderProgramImpl getCustomShader() {
-        return (ShaderProgramImpl) canvas.getShaderProgram();
+    BitmapCanvasGpu getCanvas() {
+        return canvas;
     }
 
-    private void updateTexture() {
-        if (canvas.isDirty()) {
+    /**
+     * Creates the canvas texture on first use and uploads the pixels when the canvas is dirty. Called by
+     * {@link DesktopRenderer} while collecting, before any batch is drawn, because it binds the texture.
+     * {@link SoftwareRenderer} never calls it and samples the canvas buffer directly.
+     */
+    static void uploadTexture(BitmapCanvasGpu canvas) {
+        Texture texture = canvas.getTexture();
+        if (texture == null) {
+            texture = DesktopTextureManager.loadTextureInternal(
+                    canvas.getWidthInt(), canvas.getHeightInt());
+            canvas.setTexture(texture);
+            DesktopTextureManager.bindTexture(texture);
+
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA8,
+                    canvas.getWidthInt(), canvas.getHeightInt(),
+                    0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, canvas.getBuffer());
+            canvas.markClean();
+        } else if (canvas.isDirty()) {
             DesktopTextureManager.bindTexture(texture);
             GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, 0, 0,
                     canvas.getWidthInt(), canvas.getHeightInt(),
                     GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE,
                     canvas.getBuffer());
-
             canvas.markClean();
         }
     }
 
+    @Override
+    public ShaderProgramImpl getCustomShader() {
+        return (ShaderProgramImpl) canvas.getShaderProgram();
+    }
+
     @Override
     public int getTextureId() {
-        updateTexture();
-        return texture.getId();
+        return textureId;
     }
 
     @Override
@@ -0,0 +1,62 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import java.nio.FloatBuffer;
+
+class CachedGroupDrawInfo implements DrawInfo {
+
+    private final GroupBitmapCache cache;
+    private final float a, b, c, d, e, f;
+    private final float alpha;
+
+    public CachedGroupDrawInfo(GroupBitmapCache cache, float a, float b, float c, float d, float e, float f, float alpha) {
+        this.cache = cache;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+        this.alpha = alpha;
+    }
+
+    @Override
+    public ShaderProgramImpl getCustomShader() {
+        return null;
+    }
+
+    @Override
+    public int getTextureId() {
+        return cache.target.getTextureId();
+    }
+
+    @Override
+    public boolean isPremultiplied() {
+        return true;
+    }
+
+    @Override
+    public int render(FloatBuffer buffer, DesktopRenderer renderer) {
+        float lx0 = cache.originX;
+        float ly0 = cache.originY;
+        float lx1 = lx0 + cache.width;
+        float ly1 = ly0 + cache.height;
+
+        float x0 = a * lx0 + b * ly0 + c, y0 = d * lx0 + e * ly0 + f;
+        float x1 = a * lx1 + b * ly0 + c, y1 = d * lx1 + e * ly0 + f;
+        float x2 = a * lx1 + b * ly1 + c, y2 = d * lx1 + e * ly1 + f;
+        float x3 = a * lx0 + b * ly1 + c, y3 = d * lx0 + e * ly1 + f;
+
+        // Текстура премультиплицирована, поэтому альфу умножаем и в цвет
+        float k = alpha;
+
+        // FBO хранится снизу вверх: верх группы = v 1
+        buffer.put(new float[]{
+                x0, y0, 0f, 1f, k, k, k, k,
+                x1, y1, 1f, 1f, k, k, k, k,
+                x2, y2, 1f, 0f, k, k, k, k,
+                x3, y3, 0f, 0f, k, k, k, k
+        });
+
+        return 1;
+    }
+}
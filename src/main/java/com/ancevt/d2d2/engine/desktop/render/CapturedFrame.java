@@ -0,0 +1,10 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import java.nio.ByteBuffer;
+
+/**
+ * One frame read back by {@link FrameCapture}. Pixels are tightly packed RGBA8 rows in GL order
+ * (bottom row first). The buffer is owned by the capture and recycled once the sink returns.
+ */
+public record CapturedFrame(long index, int width, int height, long timestampNanos, ByteBuffer pixels) {
+}
@@ -2,6 +2,10 @@ package com.ancevt.d2d2.engine.desktop.render;
 
 import com.ancevt.d2d2.engine.desktop.CanvasControl;
 import com.ancevt.d2d2.engine.desktop.DesktopEngine;
+import com.ancevt.d2d2.engine.desktop.RenderTargetPool;
+import com.ancevt.d2d2.engine.desktop.RenderTargetTexture;
+import com.ancevt.d2d2.engine.desktop.jfr.FlushBatchEvent;
+import com.ancevt.d2d2.engine.desktop.jfr.FramePhaseEvent;
 import com.ancevt.d2d2.engine.desktop.node.BitmapCanvasGpu;
 import com.ancevt.d2d2.event.CommonEvent;
 import com.ancevt.d2d2.event.StageEvent;
@@ -15,16 +19,18 @@ import com.ancevt.d2d2.time.Timer;
 import lombok.Getter;
 import lombok.RequiredArgsConstructor;
 import lombok.Setter;
+import lombok.SneakyThrows;
 import org.lwjgl.BufferUtils;
 import org.lwjgl.glfw.GLFW;
 import org.lwjgl.opengl.GL11;
-import org.lwjgl.opengl.GL20;
 
 import java.nio.FloatBuffer;
+import java.nio.file.Path;
 import java.util.ArrayList;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
-
-import static org.lwjgl.opengl.GL20.glUseProgram;
+import java.util.Map;
 
 @RequiredArgsConstructor
 public class DesktopRenderer implements Renderer {
@@ -49,25 +55,99 @@ public class DesktopRenderer implements Renderer {
     @Setter
     private int frameRate = 60;
 
+    public static final String RENDER_ON_CHANGE_PROPERTY = "d2d2.render.onchange";
+
+    /**
+     * Windowed loop draws and swaps only when the stage changed; while idle it blocks in
+     * {@code glfwWaitEventsTimeout} until input arrives or the next tick is due. Ticks keep their rate, and
+     * {@code PreFrame}/{@code PostFrame} are still dispatched for skipped frames, so their handlers can animate.
+     */
+    @Getter
+    @Setter
+    private boolean renderOnChange = Boolean.getBoolean(RENDER_ON_CHANGE_PROPERTY);
+
+    private final SceneChangeTracker sceneChangeTracker = new SceneChangeTracker();
+
+    /**
+     * Background behaviour and render budget of the windowed loop. Headless loop ignores it.
+     */
+    @Getter
+    @Setter
+    private PowerProfile powerProfile = PowerProfile.fromSystemProperty();
+
+    private volatile boolean iconified;
+    private volatile boolean focused = true;
+
+    // Сглаженная стоимость кадра (рендер + GPU) для адаптивного frameRate
+    private long averageFrameCostNanos;
+
+    /**
+     * Frame rate the loop actually aims for: {@code frameRate} lowered by an adaptive power profile.
+     */
+    @Getter
+    private int effectiveFrameRate = frameRate;
+
     @Getter
     private GlContextManager glContextManager;
 
+    /**
+     * Framebuffer the stage is rendered into in headless mode, null otherwise.
+     */
+    @Getter
+    private RenderTargetTexture offscreenTarget;
+
+    private final Map<Group, GroupBitmapCache> groupCaches = new IdentityHashMap<>();
+
+    private final List<FrameCapture> captures = new ArrayList<>();
+
+    private DrawStreamRecorder drawStreamRecorder;
+
+    @Getter
+    private final RenderStats renderStats = new RenderStats();
+
 
     @Override
     public void init(long windowId) {
         glContextManager = new GlContextManager(BATCH_SIZE, vertexBuffer);
         glContextManager.init();
+        renderStats.registerMBean();
+        if (engine.isHeadless()) createOffscreenTarget();
+
+        String drawStreamFile = System.getProperty(DrawStreamRecorder.PROPERTY);
+        if (drawStreamFile != null) startDrawStreamRecording(Path.of(drawStreamFile), 0);
         glContextManager.setProjection(engine.getCanvasWidth(), engine.getCanvasHeight());
 
     }
 
+    private void createOffscreenTarget() {
+        if (offscreenTarget != null) {
+            GlContextManager.setDefaultFramebuffer(0);
+            offscreenTarget.dispose();
+        }
+        offscreenTarget = new RenderTargetTexture(engine.getCanvasWidth(), engine.getCanvasHeight());
+        GlContextManager.setDefaultFramebuffer(offscreenTarget.getFboId());
+    }
+
     @Override
     public void reshape() {
+        if (offscreenTarget != null
+                && (offscreenTarget.getWidth() != engine.getCanvasWidth() || offscreenTarget.getHeight() != engine.getCanvasHeight())) {
+            createOffscreenTarget();
+        }
         glContextManager.setProjection(engine.getCanvasWidth(), engine.getCanvasHeight());
 
         var s = engine.getStage();
         s.dispatchEvent(CommonEvent.Resize.create(engine.getCanvasWidth(), engine.getCanvasHeight()));
         s.setSize(engine.getCanvasWidth(), engine.getCanvasHeight());
+        requestRender();
+    }
+
+    /**
+     * Forces the next frame to be drawn in render-on-change mode, for changes the scene fingerprint
+     * cannot see (e.g. texture contents updated in place).
+     */
+    public void requestRender() {
+        sceneChangeTracker.invalidate();
     }
 
     public void renderGroupToCurrentFrameBuffer(Group group, int width, int height) {
@@ -78,25 +158,7 @@ public class DesktopRenderer implements Renderer {
         glContextManager.setProjection(width, height);
         glContextManager.prepareRenderFrame(Color.NO_COLOR);
 
-        int currentTex = -1;
-        int batch = 0;
-        vertexBuffer.clear();
-
-        for (DrawInfo info : drawQueue) {
-            int texId = info.getTextureId();
-
-            if (batch >= BATCH_SIZE || texId != currentTex) {
-                if (batch > 0) glContextManager.flushBatch(batch);
-                batch = 0;
-                currentTex = texId;
-                glContextManager.setTextureFilter(texId, GL11.GL_NEAREST);
-                vertexBuffer.clear();
-            }
-
-            batch += info.render(vertexBuffer, this);
-        }
-
-        if (batch > 0) glContextManager.flushBatch(batch);
+        drawQueue(drawQueue, false);
 
         glContextManager.setProjection(engine.getCanvasWidth(), engine.getCanvasHeight()); // Восстанови
     }
@@ -107,42 +169,166 @@ public class DesktopRenderer implements Renderer {
         List<DrawInfo> drawQueue = new ArrayList<>();
         Stage stage = engine.getStage();
 
+        renderStats.beginFrame();
+        GlContextManager.getGpuTimer().beginFrame();
+
+        long frame = glContextManager.getFrameIndex() + 1;
+
+        FramePhaseEvent phase = FramePhaseEvent.start(FramePhaseEvent.TRAVERSAL, frame);
+        long t = System.nanoTime();
         zOrderCounter = -1;
         collectNodes(stage, 1f, 0f, 0f, 0f, 1f, 0f, 1f, drawQueue);
+        renderStats.addCollectNanos(System.nanoTime() - t);
+        phase.commit();
 
         glContextManager.prepareRenderFrame(stage.getBackgroundColor());
+        if (drawStreamRecorder != null) drawStreamRecorder.beginFrame(frame, glContextManager, stage.getBackgroundColor());
+
+        phase = FramePhaseEvent.start(FramePhaseEvent.VERTICES, frame);
+        drawQueue(drawQueue, false);
+        phase.commit();
+
+        if (drawStreamRecorder != null) {
+            drawStreamRecorder.endFrame();
+            if (drawStreamRecorder.isStopped()) drawStreamRecorder = null;
+        }
 
+        if (!captures.isEmpty()) processCaptures();
+
+        glContextManager.postRenderFrame();
+
+        if (!groupCaches.isEmpty()) releaseStaleGroupCaches();
+        RenderTargetPool.getInstance().trim();
+
+        GlContextManager.getGpuTimer().endFrame();
+        renderStats.endFrame();
+    }
+
+    // === Capture ===
+
+    /**
+     * Starts asynchronous capture of every rendered frame of the back buffer (the offscreen target in
+     * headless mode). Frames reach the sink on a background thread a frame or two later.
+     *
+     * @param maxFrames frames to capture before stopping automatically, 0 for unlimited
+     */
+    public FrameCapture startCapture(FrameCaptureSink sink, long maxFrames) {
+        return startCapture(null, sink, maxFrames);
+    }
+
+    public FrameCapture startCapture(RenderTargetTexture source, FrameCaptureSink sink, long maxFrames) {
+        FrameCapture capture = new FrameCapture(source, engine.getCanvasWidth(), engine.getCanvasHeight(), sink, maxFrames);
+        captures.add(capture);
+        return capture;
+    }
+
+    /**
+     * Stops the capture without waiting; frames still in flight are collected by the following frames.
+     */
+    public void stopCapture(FrameCapture capture) {
+        capture.stop();
+    }
+
+    /**
+     * Writes the next rendered frame to a PNG file without blocking the render thread.
+     */
+    public FrameCapture screenshot(Path pngFile) {
+        return startCapture(PngSequenceSink.singleFile(pngFile), 1);
+    }
+
+    // === Draw stream ===
+
+    /**
+     * Records the draw commands of every following frame into {@code file} for {@link DrawStreamPlayer}.
+     * Replaces a recording already in progress.
+     *
+     * @param maxFrames frames to record before stopping automatically, 0 for unlimited
+     */
+    @SneakyThrows
+    public DrawStreamRecorder startDrawStreamRecording(Path file, long maxFrames) {
+        stopDrawStreamRecording();
+        drawStreamRecorder = new DrawStreamRecorder(file, maxFrames);
+        return drawStreamRecorder;
+    }
+
+    public void stopDrawStreamRecording() {
+        if (drawStreamRecorder == null) return;
+        drawStreamRecorder.stop();
+        drawStreamRecorder = null;
+    }
+
+    private void processCaptures() {
+        for (int i = captures.size() - 1; i >= 0; i--) {
+            FrameCapture capture = captures.get(i);
+            capture.onFrameRendered();
+            if (capture.isFinished()) captures.remove(i);
+        }
+    }
+
+    // Цикл завершён, следующих кадров не будет — тут ждать GPU можно
+    private void closeCaptures() {
+        captures.forEach(FrameCapture::close);
+        captures.clear();
+    }
+
+    static final int BLEND_STRAIGHT = 0;
+    static final int BLEND_STRAIGHT_INTO_CACHE = 1;
+    static final int BLEND_PREMULTIPLIED = 2;
+
+    private void drawQueue(List<DrawInfo> drawQueue, boolean intoCache) {
         int currentTextureId = -1;
         ShaderProgram currentShader = null;
+        int currentBlend = -1;
         int batchSize = 0;
 
+        // Время генерации вершин = всё время очереди минус отправка в GL (без nanoTime на каждый элемент)
+        long queueStart = System.nanoTime();
+        long submitNanos = 0;
+
         vertexBuffer.clear();
 
         for (DrawInfo info : drawQueue) {
             int textureId = info.getTextureId();
             ShaderProgram shader = info.getCustomShader();
+            int blend = info.isPremultiplied() ? BLEND_PREMULTIPLIED
+                    : intoCache ? BLEND_STRAIGHT_INTO_CACHE : BLEND_STRAIGHT;
 
             boolean flushNeeded =
                     (textureId != currentTextureId) ||
                             (shader != currentShader) ||
+                            (blend != currentBlend) ||
                             (batchSize >= BATCH_SIZE);
 
             if (flushNeeded) {
+                long submitStart = System.nanoTime();
+
                 if (batchSize > 0) {
-                    glContextManager.flushBatch(batchSize);
+                    flushBatch(batchSize,
+                            batchSize >= BATCH_SIZE ? RenderStats.FlushReason.BATCH_FULL
+                                    : shader != currentShader ? RenderStats.FlushReason.SHADER
+                                    : textureId != currentTextureId ? RenderStats.FlushReason.TEXTURE
+                                    : RenderStats.FlushReason.BLEND,
+                            currentBlend, currentTextureId, currentShader);
                 }
 
                 currentTextureId = textureId;
                 currentShader = shader;
 
-                // 🔄 Активируем текущий шейдер
-                int shaderId = (shader == null)
-                        ? glContextManager.shaderProgram
-                        : shader.getId();
+                if (blend != currentBlend) {
+                    applyBlend(blend);
+                    currentBlend = blend;
+                }
 
-                glUseProgram(shaderId);
+                // 🔄 Активируем текущий шейдер (через кэш состояния)
+                if (shader == null) {
+                    glContextManager.useDefaultProgram();
+                } else {
+                    GlContextManager.useProgram(shader.getId());
+                }
 
+                // 💉 Передаём только изменившиеся uniform'ы (если ShaderProgramImpl)
                 if (shader instanceof ShaderProgramImpl impl) {
+                    impl.applyFrameGlobals(glContextManager);
                     impl.uploadUniforms();
                 }
 
@@ -150,47 +336,214 @@ public class DesktopRenderer implements Renderer {
                 vertexBuffer.clear();
                 batchSize = 0;
 
-                // 💉 Передаём uniform'ы (если ShaderProgramImpl)
-                if (shader instanceof ShaderProgramImpl impl) {
-                    float time = System.nanoTime() / 1_000_000_000.0f;
+                submitNanos += System.nanoTime() - submitStart;
+            }
 
-                    impl.setUniform("uTime", time);
+            batchSize += info.render(vertexBuffer, this);
+        }
 
-                    int uProj = impl.getUniformLocation("uProjection");
-                    if (uProj != -1) {
-                        GL20.glUniformMatrix4fv(uProj, false, glContextManager.getProjectionMatrix());
-                    }
+        long submitStart = System.nanoTime();
+        if (batchSize > 0) {
+            flushBatch(batchSize, RenderStats.FlushReason.END, currentBlend, currentTextureId, currentShader);
+        }
 
-                    int uTex = impl.getUniformLocation("uTexture");
-                    if (uTex != -1) {
-                        impl.setUniform("uTexture", 0); // GL_TEXTURE0
-                    }
-                } else {
-                    // 🔁 Если шейдер null — ставим uProjection для дефолтного
-                    GL20.glUniformMatrix4fv(
-                            glContextManager.uProjectionLocation,
-                            false,
-                            glContextManager.getProjectionMatrix()
-                    );
-                }
+        applyBlend(BLEND_STRAIGHT);
+        long end = System.nanoTime();
+        submitNanos += end - submitStart;
+
+        renderStats.addSubmitNanos(submitNanos);
+        renderStats.addVertexNanos(end - queueStart - submitNanos);
+    }
+
+    private void flushBatch(int batchSize, RenderStats.FlushReason reason, int blend, int textureId, ShaderProgram shader) {
+        FlushBatchEvent event = new FlushBatchEvent();
+        event.begin();
+
+        if (drawStreamRecorder != null) drawStreamRecorder.onBatch(blend, textureId, shader, batchSize, vertexBuffer);
+
+        glContextManager.flushBatch(batchSize);
+        renderStats.onFlush(reason, batchSize);
+
+        if (event.shouldCommit()) {
+            event.quads = batchSize;
+            event.bytes = (long) batchSize * VERTICES_PER_SPRITE * FLOATS_PER_VERTEX * Float.BYTES;
+            event.reason = reason.name();
+            event.commit();
+        }
+    }
+
+    static void applyBlend(int blend) {
+        switch (blend) {
+            case BLEND_PREMULTIPLIED -> GlContextManager.blendFunc(GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+            // В кэш пишем премультиплицированный результат: альфа накапливается как ONE, ONE_MINUS_SRC_ALPHA
+            case BLEND_STRAIGHT_INTO_CACHE -> GlContextManager.blendFuncSeparate(
+                    GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA, GL11.GL_ONE, GL11.GL_ONE_MINUS_SRC_ALPHA);
+            default -> GlContextManager.blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        }
+    }
+
+    // === cacheAsBitmap ===
+
+    /**
+     * Draws the group's subtree into a pooled render target and then as a single textured quad.
+     * The target is re-rendered only when something inside the subtree changes; transforming the
+     * group itself is free. Disabling the mode releases the render target, and so does removing the group
+     * from the stage: a cache not drawn for {@value GroupBitmapCache#MAX_UNVISITED_FRAMES} frames is
+     * dropped, after which the mode has to be enabled again.
+     */
+    public void setCacheAsBitmap(Group group, boolean enabled) {
+        if (enabled) {
+            GroupBitmapCache cache = groupCaches.computeIfAbsent(group, GroupBitmapCache::new);
+            // Отсчёт невидимых кадров — с момента включения, а не с нулевого кадра
+            if (glContextManager != null) cache.lastVisitedFrame = glContextManager.getFrameIndex();
+        } else {
+            GroupBitmapCache cache = groupCaches.remove(group);
+            if (cache != null) cache.dispose();
+        }
+    }
+
+    public boolean isCacheAsBitmap(Group group) {
+        return groupCaches.containsKey(group);
+    }
+
+    /**
+     * Forces a re-render of the cached group on the next frame (e.g. after changing texture pixels in place).
+     */
+    public void invalidateCacheAsBitmap(Group group) {
+        GroupBitmapCache cache = groupCaches.get(group);
+        if (cache != null) cache.forceRefresh = true;
+    }
+
+    private boolean collectCachedGroup(GroupBitmapCache cache, float a, float b, float c, float d, float e, float f, float alpha, List<DrawInfo> drawQueue) {
+        int zOrderBefore = zOrderCounter;
+        cache.lastVisitedFrame = glContextManager.getFrameIndex();
+        long signature = subtreeSignature(cache.group, NodeSignature.FNV_OFFSET);
+
+        if (cache.forceRefresh || signature != cache.signature) {
+            cache.signature = signature;
+            cache.forceRefresh = false;
+            refreshGroupCache(cache);
+        }
+
+        if (!cache.valid) {
+            // Слишком большая группа — рисуем как обычно
+            zOrderCounter = zOrderBefore;
+            return false;
+        }
+
+        if (cache.width > 0 && cache.height > 0) {
+            drawQueue.add(new CachedGroupDrawInfo(cache, a, b, c, d, e, f, alpha));
+        }
+        return true;
+    }
+
+    // Кэши достижимы только через collectNodes: группу сняли со сцены без setCacheAsBitmap(false) —
+    // иначе карта держала бы поддерево и таргет вечно
+    private void releaseStaleGroupCaches() {
+        long frame = glContextManager.getFrameIndex();
+        Iterator<GroupBitmapCache> iterator = groupCaches.values().iterator();
+        while (iterator.hasNext()) {
+            GroupBitmapCache cache = iterator.next();
+            if (frame - cache.lastVisitedFrame > GroupBitmapCache.MAX_UNVISITED_FRAMES) {
+                cache.dispose();
+                iterator.remove();
             }
+        }
+    }
 
-            batchSize += info.render(vertexBuffer, this);
+    private long subtreeSignature(Group group, long h) {
+        for (Node child : group.children().toList()) {
+            if (assignZOrder) {
+                zOrderCounter++;
+                child.setGlobalZOrderIndex(zOrderCounter);
+            }
+            h = NodeSignature.mixNode(h, child);
+            if (child instanceof Group childGroup) {
+                h = subtreeSignature(childGroup, h);
+            }
         }
+        return NodeSignature.mix(h, -2L); // конец списка детей
+    }
 
-        if (batchSize > 0) {
-            glContextManager.flushBatch(batchSize);
+    private void refreshGroupCache(GroupBitmapCache cache) {
+        List<DrawInfo> queue = new ArrayList<>();
+
+        boolean assignZOrderBefore = assignZOrder;
+        assignZOrder = false;
+        for (Node child : cache.group.children().toList()) {
+            collectNodes(child, 1f, 0f, 0f, 0f, 1f, 0f, 1f, queue);
         }
+        assignZOrder = assignZOrderBefore;
+
+        // Границы поддерева в локальных координатах группы — по сгенерированным вершинам
+        float minX = Float.MAX_VALUE, minY = Float.MAX_VALUE;
+        float maxX = -Float.MAX_VALUE, maxY = -Float.MAX_VALUE;
+        for (DrawInfo info : queue) {
+            vertexBuffer.clear();
+            info.render(vertexBuffer, this);
+            int floats = vertexBuffer.position();
+            for (int i = 0; i < floats; i += FLOATS_PER_VERTEX) {
+                float x = vertexBuffer.get(i);
+                float y = vertexBuffer.get(i + 1);
+                if (x < minX) minX = x;
+                if (y < minY) minY = y;
+                if (x > maxX) maxX = x;
+                if (y > maxY) maxY = y;
+            }
+        }
+        vertexBuffer.clear();
 
-        glContextManager.postRenderFrame();
+        if (minX > maxX || minY > maxY) {
+            cache.dispose();
+            cache.width = cache.height = 0;
+            cache.valid = true;
+            return;
+        }
+
+        int originX = (int) Math.floor(minX);
+        int originY = (int) Math.floor(minY);
+        int width = (int) Math.ceil(maxX) - originX;
+        int height = (int) Math.ceil(maxY) - originY;
+
+        if (width <= 0 || height <= 0 || width > GroupBitmapCache.MAX_SIZE || height > GroupBitmapCache.MAX_SIZE) {
+            cache.dispose();
+            cache.width = cache.height = 0;
+            cache.valid = width <= 0 || height <= 0;
+            return;
+        }
+
+        cache.resize(originX, originY, width, height);
+
+        int framebufferBefore = GlContextManager.getBoundFramebuffer();
+        float projectionX = glContextManager.getProjectionX();
+        float projectionY = glContextManager.getProjectionY();
+        int projectionWidth = glContextManager.getProjectionWidth();
+        int projectionHeight = glContextManager.getProjectionHeight();
+
+        cache.target.bind();
+        glContextManager.setProjection(originX, originY, width, height);
+        GL11.glClearColor(0f, 0f, 0f, 0f);
+        GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
+
+        int scope = GlContextManager.getGpuTimer().begin(GpuTimer.CACHE_AS_BITMAP);
+        drawQueue(queue, true);
+        GlContextManager.getGpuTimer().end(scope);
+
+        GlContextManager.bindFramebuffer(framebufferBefore);
+        glContextManager.setProjection(projectionX, projectionY, projectionWidth, projectionHeight);
+
+        cache.valid = true;
     }
 
     private static int zOrderCounter;
+    private boolean assignZOrder = true;
 
-    private static void collectNodes(Node node, float a, float b, float c, float d, float e, float f, float alpha, List<DrawInfo> drawQueue) {
+    void collectNodes(Node node, float a, float b, float c, float d, float e, float f, float alpha, List<DrawInfo> drawQueue) {
 
-        zOrderCounter++;
-        node.setGlobalZOrderIndex(zOrderCounter);
+        if (assignZOrder) {
+            zOrderCounter++;
+            node.setGlobalZOrderIndex(zOrderCounter);
+        }
 
         float x = node.getX(), y = node.getY();
         float scaleX = node.getScaleX(), scaleY = node.getScaleY();
@@ -209,6 +562,11 @@ public class DesktopRenderer implements Renderer {
 
         float newAlpha = alpha * node.getAlpha();
 
+        if (!groupCaches.isEmpty() && node instanceof Group group) {
+            GroupBitmapCache cache = groupCaches.get(group);
+            if (cache != null && collectCachedGroup(cache, na, nb, nc, nd, ne, nf, newAlpha, drawQueue)) return;
+        }
+
         if (node instanceof Sprite sprite) {
             drawQueue.add(new SpriteDrawInfo(sprite, na, nb, nc, nd, ne, nf, newAlpha));
         } else if (node instanceof BitmapText btx) {
@@ -216,7 +574,12 @@ public class DesktopRenderer implements Renderer {
                 //throw new IllegalStateException("cache as sprite not supported. "+ btx.toString());
                 drawQueue.add(new SpriteDrawInfo(btx.cachedSprite(), na, nb, nc, nd, ne, nf, newAlpha));
             } else {
-                drawQueue.add(new BitmapTextDrawInfo(btx, na, nb, nc, nd, ne, nf, newAlpha));
+                DynamicGlyphAtlas atlas = DynamicGlyphAtlas.of(btx.getBitmapFont());
+                if (atlas != null) {
+                    DynamicTextDrawInfo.collect(btx, atlas, glContextManager.getFrameIndex(), na, nb, nc, nd, ne, nf, newAlpha, drawQueue);
+                } else {
+                    drawQueue.add(new BitmapTextDrawInfo(btx, na, nb, nc, nd, ne, nf, newAlpha));
+                }
             }
         } else if (node instanceof RectangleShape rect) {
             drawQueue.add(new RectangleShapeDrawInfo(rect, na, nb, nc, nd, ne, nf, newAlpha));
@@ -225,6 +588,7 @@ public class DesktopRenderer implements Renderer {
         } else if (node instanceof LineBatch lineBatch) {
             drawQueue.add(new LineBatchDrawInfo(lineBatch, na, nb, nc, nd, ne, nf, newAlpha));
         } else if (node instanceof BitmapCanvasGpu canvasGPU) {
+            BitmapCanvasGpuDrawInfo.uploadTexture(canvasGPU);
             drawQueue.add(new BitmapCanvasGpuDrawInfo(canvasGPU, na, nb, nc, nd, ne, nf, newAlpha));
         }
 
@@ -236,11 +600,92 @@ public class DesktopRenderer implements Renderer {
         }
     }
 
+    /**
+     * One deterministic frame: timers, one tick, PreFrame, render, PostFrame. Nothing is presented.
+     */
+    public void step() {
+        Stage stage = engine.getStage();
+
+        tick(stage);
+        renderWithFrameEvents(stage);
+    }
+
+    private void tick(Stage stage) {
+        long frame = glContextManager.getFrameIndex();
+
+        FramePhaseEvent phase = FramePhaseEvent.start(FramePhaseEvent.TIMERS, frame);
+        Timer.processTimers();
+        phase.commit();
+
+        phase = FramePhaseEvent.start(FramePhaseEvent.TICK, frame);
+        stage.dispatchEvent(StageEvent.Tick.create());
+        phase.commit();
+    }
+
+    private void renderWithFrameEvents(Stage stage) {
+        long frame = dispatchPreFrame(stage);
+        renderFrame();
+        dispatchPostFrame(stage, frame);
+    }
+
+    private long dispatchPreFrame(Stage stage) {
+        long frame = glContextManager.getFrameIndex() + 1;
+
+        FramePhaseEvent phase = FramePhaseEvent.start(FramePhaseEvent.PRE_FRAME, frame);
+        stage.dispatchEvent(StageEvent.PreFrame.create());
+        phase.commit();
+        return frame;
+    }
+
+    private void dispatchPostFrame(Stage stage, long frame) {
+        FramePhaseEvent phase = FramePhaseEvent.start(FramePhaseEvent.POST_FRAME, frame);
+        stage.dispatchEvent(StageEvent.PostFrame.create());
+        phase.commit();
+    }
+
+    private void startHeadlessLoop() {
+        long windowId = CanvasControl.getWindowId();
+
+        int frames = 0;
+        long fpsTimer = System.currentTimeMillis();
+
+        // Без ограничения по frameRate, без swap и без опроса ввода
+        while (!GLFW.glfwWindowShouldClose(windowId) && running) {
+            step();
+            frames++;
+
+            if (System.currentTimeMillis() - fpsTimer >= 1000) {
+                actualFps = frames;
+                frames = 0;
+                fpsTimer += 1000;
+            }
+        }
+
+        stopDrawStreamRecording();
+        closeCaptures();
+        DynamicGlyphAtlas.disposeAll();
+        renderStats.unregisterMBean();
+        GLFW.glfwTerminate();
+    }
+
     public void startRenderLoop() {
+        if (engine.isHeadless()) {
+            startHeadlessLoop();
+            return;
+        }
+
         long windowId = CanvasControl.getWindowId();
 
         Stage stage = engine.getStage();
 
+        // Окно перекрыли/развернули — содержимое надо перерисовать, даже если сцена та же
+        GLFW.glfwSetWindowRefreshCallback(windowId, window -> requestRender());
+        GLFW.glfwSetWindowIconifyCallback(windowId, (window, value) -> {
+            iconified = value;
+            if (!value) requestRender();
+        });
+        GLFW.glfwSetWindowFocusCallback(windowId, (window, value) -> focused = value);
+
         long lastTime = System.nanoTime();
         long accumulator = 0L;
         long lastRenderTime = System.nanoTime();
@@ -249,8 +694,21 @@ public class DesktopRenderer implements Renderer {
         long fpsTimer = System.currentTimeMillis();
 
         while (!GLFW.glfwWindowShouldClose(windowId) && running) {
-            final long tickInterval = 1_000_000_000L / (frameRate + 10);
-            final long frameInterval = 1_000_000_000L / (frameRate + 10);
+            PowerProfile profile = powerProfile;
+            PowerProfile.Policy policy = profile.policy(iconified, focused);
+
+            if (policy == PowerProfile.Policy.PAUSE) {
+                // Ни тиков, ни рендера — ждём событие окна (разворачивание, фокус)
+                GLFW.glfwWaitEvents();
+                lastTime = System.nanoTime();
+                accumulator = 0L;
+                continue;
+            }
+
+            final long tickInterval = policy == PowerProfile.Policy.LOW_TICK_RATE
+                    ? 1_000_000_000L / Math.max(1, profile.backgroundTickRate())
+                    : 1_000_000_000L / (frameRate + 10);
+            final long frameInterval = 1_000_000_000L / (adaptFrameRate(profile) + 10);
 
             long now = System.nanoTime();
             long delta = now - lastTime;
@@ -259,23 +717,45 @@ public class DesktopRenderer implements Renderer {
 
             // ✅ Tick логики
             while (accumulator >= tickInterval) {
-                Timer.processTimers();
-                stage.dispatchEvent(StageEvent.Tick.create());
+                tick(stage);
                 accumulator -= tickInterval;
             }
 
+            boolean idle = policy != PowerProfile.Policy.FULL;
+
             // ✅ Ограничим рендер частотой frameRate
-            if (now - lastRenderTime >= frameInterval) {
-                stage.dispatchEvent(StageEvent.PreFrame.create());
-                renderFrame();
-                stage.dispatchEvent(StageEvent.PostFrame.create());
-                GLFW.glfwSwapBuffers(windowId);
+            if (!idle && now - lastRenderTime >= frameInterval) {
+                long renderStart = System.nanoTime();
+                // PreFrame идёт до сравнения отпечатков: обработчики могут сами анимировать сцену
+                long frame = dispatchPreFrame(stage);
+
+                if (!renderOnChange || sceneChangeTracker.hasChanged(stage)) {
+                    renderFrame();
+                    dispatchPostFrame(stage, frame);
+                    if (profile.isAdaptive()) measureFrameCost(System.nanoTime() - renderStart);
+
+                    FramePhaseEvent phase = FramePhaseEvent.start(FramePhaseEvent.SWAP, glContextManager.getFrameIndex());
+                    long swapStart = System.nanoTime();
+                    GLFW.glfwSwapBuffers(windowId);
+                    renderStats.recordSwap(System.nanoTime() - swapStart);
+                    phase.commit();
+                    frames++;
+                } else {
+                    dispatchPostFrame(stage, frame);
+                    idle = true;
+                }
                 lastRenderTime = now;
-                frames++;
             }
 
             // ✅ Обрабатываем события независимо
-            GLFW.glfwPollEvents();
+            FramePhaseEvent poll = FramePhaseEvent.start(FramePhaseEvent.POLL, glContextManager.getFrameIndex());
+            if (idle) {
+                // Рисовать нечего — спим до ввода или до следующего тика
+                GLFW.glfwWaitEventsTimeout(Math.max(0, tickInterval - accumulator) / 1_000_000_000.0);
+            } else {
+                GLFW.glfwPollEvents();
+            }
+            poll.commit();
 
             if (System.currentTimeMillis() - fpsTimer >= 1000) {
                 actualFps = frames;
@@ -284,15 +764,38 @@ public class DesktopRenderer implements Renderer {
             }
 
             // 💡 Чтобы не сжигать CPU — делаем sleep на пару миллисекунд
-            try {
-                Thread.sleep(1);
-            } catch (InterruptedException e) {
-                Thread.currentThread().interrupt();
+            if (!idle) {
+                try {
+                    Thread.sleep(1);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
             }
         }
 
+        stopDrawStreamRecording();
+        closeCaptures();
+        DynamicGlyphAtlas.disposeAll();
+        renderStats.unregisterMBean();
         GLFW.glfwTerminate();
     }
 
+    private void measureFrameCost(long cpuNanos) {
+        // GPU-время приходит с опозданием на пару кадров, но для сглаженной оценки это неважно
+        long cost = Math.max(cpuNanos, GlContextManager.getGpuTimer().getLastFrameNanos());
+        averageFrameCostNanos = averageFrameCostNanos == 0 ? cost : (averageFrameCostNanos * 7 + cost) / 8;
+    }
+
+    private int adaptFrameRate(PowerProfile profile) {
+        if (!profile.isAdaptive() || averageFrameCostNanos == 0) {
+            effectiveFrameRate = frameRate;
+        } else {
+            // Кадр стоит cost, можно тратить не больше maxRenderDuty времени: fps <= duty / cost
+            int budgetFps = (int) (profile.maxRenderDuty() * 1_000_000_000L / averageFrameCostNanos);
+            effectiveFrameRate = Math.max(Math.min(profile.minFrameRate(), frameRate), Math.min(frameRate, budgetFps));
+        }
+        return effectiveFrameRate;
+    }
+
 
 }
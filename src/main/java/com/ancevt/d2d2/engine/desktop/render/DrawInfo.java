@@ -8,4 +8,11 @@ interface DrawInfo {
     int getTextureId();
 
     ShaderProgramImpl getCustomShader();
+
+    /**
+     * True if the texture holds premultiplied alpha (e.g. a cached group render target).
+     */
+    default boolean isPremultiplied() {
+        return false;
+    }
 }
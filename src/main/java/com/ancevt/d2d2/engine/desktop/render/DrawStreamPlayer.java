@@ -0,0 +1,206 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import lombok.Getter;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedInputStream;
+import java.io.Closeable;
+import java.io.DataInputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Re-submits a stream written by {@link DrawStreamRecorder} through {@link GlContextManager}, one frame per
+ * {@link #replayFrame()}, with no scene graph and no game code involved. Must be used on the GL thread of an
+ * initialised renderer (a headless engine is enough); presenting the frame is up to the caller.
+ */
+public class DrawStreamPlayer implements Closeable {
+
+    private final Path file;
+    private final DesktopRenderer renderer;
+    private DataInputStream in;
+
+    private final Map<Integer, Integer> textures = new HashMap<>();
+    private final Map<Integer, ShaderProgramImpl> shaders = new HashMap<>();
+    private byte[] vertexScratch = new byte[0];
+
+    @Getter
+    private long replayedFrames;
+    @Getter
+    private long replayedBatches;
+
+    public DrawStreamPlayer(DesktopRenderer renderer, Path file) throws IOException {
+        this.renderer = renderer;
+        this.file = file;
+        open();
+    }
+
+    private void open() throws IOException {
+        in = new DataInputStream(new BufferedInputStream(new GZIPInputStream(Files.newInputStream(file)), 1 << 16));
+        if (in.readInt() != DrawStreamRecorder.MAGIC) {
+            throw new IOException("Not a draw stream: " + file);
+        }
+        int version = in.readInt();
+        if (version != DrawStreamRecorder.VERSION) {
+            throw new IOException("Unsupported draw stream version " + version + ": " + file);
+        }
+    }
+
+    /**
+     * Starts over from the first frame. Textures and programs already created are kept.
+     */
+    public void rewind() throws IOException {
+        in.close();
+        open();
+    }
+
+    /**
+     * @return false when the stream has no more frames
+     */
+    public boolean replayFrame() throws IOException {
+        GlContextManager gl = renderer.getGlContextManager();
+
+        while (true) {
+            int tag = in.read();
+            if (tag == -1) return false;
+
+            switch (tag) {
+                case DrawStreamRecorder.TAG_TEXTURE -> readTexture();
+                case DrawStreamRecorder.TAG_SHADER -> readShader();
+                case DrawStreamRecorder.TAG_FRAME -> readFrame(gl);
+                case DrawStreamRecorder.TAG_BATCH -> readBatch(gl);
+                case DrawStreamRecorder.TAG_END_FRAME -> {
+                    DesktopRenderer.applyBlend(DesktopRenderer.BLEND_STRAIGHT);
+                    replayedFrames++;
+                    return true;
+                }
+                default -> throw new IOException("Corrupt draw stream, unknown record " + tag);
+            }
+        }
+    }
+
+    /**
+     * Replays every remaining frame.
+     *
+     * @return number of frames replayed
+     */
+    public long replayAll() throws IOException {
+        long frames = 0;
+        while (replayFrame()) frames++;
+        return frames;
+    }
+
+    private void readFrame(GlContextManager gl) throws IOException {
+        in.readLong();
+        float x = in.readFloat();
+        float y = in.readFloat();
+        int width = in.readInt();
+        int height = in.readInt();
+        float r = in.readFloat(), g = in.readFloat(), b = in.readFloat(), a = in.readFloat();
+
+        if (gl.getProjectionX() != x || gl.getProjectionY() != y
+                || gl.getProjectionWidth() != width || gl.getProjectionHeight() != height) {
+            gl.setProjection(x, y, width, height);
+        }
+        GlContextManager.bindFramebuffer(0);
+        gl.prepareRenderFrame(r, g, b, a);
+    }
+
+    private void readBatch(GlContextManager gl) throws IOException {
+        int blend = in.readByte();
+        int recordedTextureId = in.readInt();
+        int shaderHandle = in.readInt();
+
+        ShaderProgramImpl shader = shaderHandle == -1 ? null : shaders.get(shaderHandle);
+        if (shader != null) {
+            shader.readUniforms(in);
+        }
+
+        int quads = in.readInt();
+        int bytes = quads * DrawStreamRecorder.FLOATS_PER_QUAD * Float.BYTES;
+        if (vertexScratch.length < bytes) vertexScratch = new byte[bytes];
+        in.readFully(vertexScratch, 0, bytes);
+
+        DesktopRenderer.applyBlend(blend);
+        if (shader == null) {
+            gl.useDefaultProgram();
+        } else {
+            GlContextManager.useProgram(shader.getId());
+            shader.applyFrameGlobals(gl);
+            shader.uploadUniforms();
+        }
+
+        Integer textureId = textures.get(recordedTextureId);
+        gl.setTextureFilter(textureId != null ? textureId : GlContextManager.getWhiteTexture().getId(), GL11.GL_NEAREST);
+
+        FloatBuffer vertexBuffer = gl.getVertexBuffer();
+        vertexBuffer.clear();
+        vertexBuffer.put(ByteBuffer.wrap(vertexScratch, 0, bytes).asFloatBuffer());
+        gl.flushBatch(quads);
+        replayedBatches++;
+    }
+
+    private void readTexture() throws IOException {
+        int recordedId = in.readInt();
+        int width = in.readInt();
+        int height = in.readInt();
+        int wrapS = in.readInt();
+        int wrapT = in.readInt();
+        byte[] bytes = new byte[width * height * 4];
+        in.readFully(bytes);
+
+        if (textures.containsKey(recordedId)) return; // уже создана при прошлом проходе
+
+        ByteBuffer pixels = MemoryUtil.memAlloc(bytes.length);
+        try {
+            pixels.put(bytes).flip();
+            int textureId = GL11.glGenTextures();
+            GlContextManager.bindTexture(textureId);
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, wrapS);
+            GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, wrapT);
+            GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 1);
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, width, height, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+            textures.put(recordedId, textureId);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    private void readShader() throws IOException {
+        int handle = in.readInt();
+        String vertexSource = readString();
+        String fragmentSource = readString();
+
+        if (shaders.containsKey(handle) || vertexSource.isEmpty()) return;
+        shaders.put(handle, new ShaderProgramImpl(vertexSource, fragmentSource));
+    }
+
+    private String readString() throws IOException {
+        byte[] bytes = new byte[in.readInt()];
+        in.readFully(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Closes the stream and deletes the textures and programs created for replay. GL thread only.
+     */
+    @Override
+    public void close() throws IOException {
+        in.close();
+        for (int textureId : textures.values()) {
+            GlContextManager.forgetTexture(textureId);
+            GL11.glDeleteTextures(textureId);
+        }
+        textures.clear();
+        shaders.values().forEach(ShaderProgramImpl::destroy);
+        shaders.clear();
+    }
+}
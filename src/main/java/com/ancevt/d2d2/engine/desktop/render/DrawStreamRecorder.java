@@ -0,0 +1,269 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.scene.Color;
+import com.ancevt.d2d2.scene.shader.ShaderProgram;
+import lombok.Getter;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.system.MemoryUtil;
+
+import java.io.BufferedOutputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.FloatBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.zip.GZIPOutputStream;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * Records the draw commands the renderer submits for each frame into a gzipped binary stream that
+ * {@link DrawStreamPlayer} can re-submit without the game.
+ * <p>
+ * Batches are recorded as they reach the GPU: blend mode, texture, program (sources on first use, uniform
+ * values every batch) and the finished vertices, so node transforms are already applied. Texture contents are
+ * read back once, on first use; textures changed later (canvases, render targets) replay as first seen.
+ * Frames are serialised in memory on the GL thread and written by a background thread.
+ * <p>
+ * Layout: {@code int MAGIC, int VERSION}, then tagged records until EOF.
+ * <pre>
+ * TEXTURE   int id, int width, int height, int wrapS, int wrapT, RGBA8 bytes
+ * SHADER    int handle, int length + UTF-8 vertex source, int length + UTF-8 fragment source
+ * FRAME     long index, float projX, projY, int projWidth, projHeight, float clear r, g, b, a
+ * BATCH     byte blend, int textureId, int shaderHandle (-1 = default), [uniforms], int quads, float vertices
+ * END_FRAME
+ * </pre>
+ */
+public class DrawStreamRecorder {
+
+    public static final String PROPERTY = "d2d2.drawstream.record";
+
+    static final int MAGIC = 0x44324453; // "D2DS"
+    static final int VERSION = 2;
+
+    static final byte TAG_TEXTURE = 1;
+    static final byte TAG_SHADER = 2;
+    static final byte TAG_FRAME = 3;
+    static final byte TAG_BATCH = 4;
+    static final byte TAG_END_FRAME = 5;
+
+    static final int FLOATS_PER_QUAD = 4 * 8;
+
+    private static final byte[] POISON = new byte[0];
+
+    @Getter
+    private final Path file;
+    private final long maxFrames;
+
+    private final BitSet recordedTextures = new BitSet();
+    private final Map<ShaderProgram, Integer> shaderHandles = new IdentityHashMap<>();
+
+    private final ByteArrayOutputStream frameBytes = new ByteArrayOutputStream(1 << 16);
+    private final DataOutputStream out = new DataOutputStream(frameBytes);
+    private byte[] vertexScratch = new byte[0];
+    private boolean inFrame;
+
+    private final OutputStream fileOut;
+    private final BlockingQueue<byte[]> writeQueue = new LinkedBlockingQueue<>();
+    private final Thread writerThread;
+
+    @Getter
+    private long recordedFrames;
+    @Getter
+    private volatile long writtenBytes;
+    @Getter
+    private boolean stopped;
+
+    /**
+     * @param maxFrames frames to record before stopping automatically, 0 for unlimited
+     */
+    public DrawStreamRecorder(Path file, long maxFrames) throws IOException {
+        this.file = file;
+        this.maxFrames = maxFrames;
+
+        fileOut = new GZIPOutputStream(new BufferedOutputStream(Files.newOutputStream(file), 1 << 16));
+        DataOutputStream header = new DataOutputStream(fileOut);
+        header.writeInt(MAGIC);
+        header.writeInt(VERSION);
+
+        writerThread = new Thread(this::writeLoop, "d2d2-drawstream-writer");
+        writerThread.setDaemon(true);
+        writerThread.start();
+    }
+
+    // === GL thread ===
+
+    void beginFrame(long frameIndex, GlContextManager glContextManager, Color backgroundColor) {
+        if (stopped) return;
+        inFrame = true;
+        try {
+            out.writeByte(TAG_FRAME);
+            out.writeLong(frameIndex);
+            out.writeFloat(glContextManager.getProjectionX());
+            out.writeFloat(glContextManager.getProjectionY());
+            out.writeInt(glContextManager.getProjectionWidth());
+            out.writeInt(glContextManager.getProjectionHeight());
+            if (backgroundColor == null) {
+                for (int i = 0; i < 4; i++) out.writeFloat(0f);
+            } else {
+                out.writeFloat(backgroundColor.getR() / 255f);
+                out.writeFloat(backgroundColor.getG() / 255f);
+                out.writeFloat(backgroundColor.getB() / 255f);
+                out.writeFloat(1f);
+            }
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    /**
+     * Called right before the batch is flushed, with {@code vertices} holding its quads from position 0.
+     */
+    void onBatch(int blend, int textureId, ShaderProgram shader, int quads, FloatBuffer vertices) {
+        if (!inFrame) return;
+        try {
+            if (textureId > 0 && !recordedTextures.get(textureId)) {
+                recordTexture(textureId);
+                recordedTextures.set(textureId);
+            }
+            int shaderHandle = shader == null ? -1 : shaderHandle(shader);
+
+            out.writeByte(TAG_BATCH);
+            out.writeByte(blend);
+            out.writeInt(textureId);
+            out.writeInt(shaderHandle);
+            if (shader instanceof ShaderProgramImpl impl) impl.writeUniforms(out);
+            out.writeInt(quads);
+
+            int floats = quads * FLOATS_PER_QUAD;
+            if (vertexScratch.length < floats * Float.BYTES) vertexScratch = new byte[floats * Float.BYTES];
+            FloatBuffer view = ByteBuffer.wrap(vertexScratch).asFloatBuffer();
+            view.put(vertices.duplicate().position(0).limit(floats));
+            out.write(vertexScratch, 0, floats * Float.BYTES);
+        } catch (IOException e) {
+            fail(e);
+        }
+    }
+
+    void endFrame() {
+        if (!inFrame) return;
+        inFrame = false;
+        try {
+            out.writeByte(TAG_END_FRAME);
+        } catch (IOException e) {
+            fail(e);
+            return;
+        }
+        writeQueue.add(frameBytes.toByteArray());
+        frameBytes.reset();
+
+        recordedFrames++;
+        if (maxFrames > 0 && recordedFrames >= maxFrames) stop();
+    }
+
+    private int shaderHandle(ShaderProgram shader) throws IOException {
+        Integer handle = shaderHandles.get(shader);
+        if (handle != null) return handle;
+
+        handle = shaderHandles.size();
+        shaderHandles.put(shader, handle);
+
+        out.writeByte(TAG_SHADER);
+        out.writeInt(handle);
+        if (shader instanceof ShaderProgramImpl impl) {
+            writeString(impl.getVertexSource());
+            writeString(impl.getFragmentSource());
+        } else {
+            // Чужая реализация — исходников нет, при воспроизведении будет шейдер по умолчанию
+            writeString("");
+            writeString("");
+        }
+        return handle;
+    }
+
+    private void recordTexture(int textureId) throws IOException {
+        GlContextManager.bindTexture(textureId);
+        int width = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_WIDTH);
+        int height = GL11.glGetTexLevelParameteri(GL11.GL_TEXTURE_2D, 0, GL11.GL_TEXTURE_HEIGHT);
+        // PNG-текстуры повторяются, холсты и цели рендера обрезаются — при воспроизведении нужно так же
+        int wrapS = GL11.glGetTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S);
+        int wrapT = GL11.glGetTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T);
+
+        ByteBuffer pixels = MemoryUtil.memAlloc(width * height * 4);
+        try {
+            GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+            GL11.glGetTexImage(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, pixels);
+
+            byte[] bytes = new byte[pixels.remaining()];
+            pixels.get(bytes);
+
+            out.writeByte(TAG_TEXTURE);
+            out.writeInt(textureId);
+            out.writeInt(width);
+            out.writeInt(height);
+            out.writeInt(wrapS);
+            out.writeInt(wrapT);
+            out.write(bytes);
+        } finally {
+            MemoryUtil.memFree(pixels);
+        }
+    }
+
+    private void writeString(String s) throws IOException {
+        byte[] bytes = s.getBytes(StandardCharsets.UTF_8);
+        out.writeInt(bytes.length);
+        out.write(bytes);
+    }
+
+    private void fail(IOException e) {
+        log.error(DrawStreamRecorder.class, "Draw stream recording failed", e);
+        inFrame = false;
+        stop();
+    }
+
+    /**
+     * Stops recording; the writer thread finishes the queued frames and closes the file in the background.
+     */
+    public void stop() {
+        if (stopped) return;
+        stopped = true;
+        inFrame = false;
+        writeQueue.add(POISON);
+    }
+
+    public void awaitCompletion() throws InterruptedException {
+        writerThread.join();
+    }
+
+    // === Writer thread ===
+
+    private void writeLoop() {
+        try {
+            while (true) {
+                byte[] frame = writeQueue.take();
+                if (frame == POISON) break;
+                fileOut.write(frame);
+                writtenBytes += frame.length;
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IOException e) {
+            log.error(DrawStreamRecorder.class, "Could not write draw stream " + file, e);
+        } finally {
+            try {
+                fileOut.close();
+            } catch (IOException e) {
+                log.error(DrawStreamRecorder.class, "Could not close draw stream " + file, e);
+            }
+        }
+    }
+}
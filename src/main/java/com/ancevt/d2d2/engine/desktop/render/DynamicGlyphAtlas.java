@@ -0,0 +1,360 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.scene.text.BitmapFont;
+import lombok.Getter;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL12;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.AlphaComposite;
+import java.awt.Color;
+import java.awt.Font;
+import java.awt.FontMetrics;
+import java.awt.Graphics2D;
+import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferInt;
+import java.lang.ref.Reference;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Glyphs of a large character set rasterised on first use. Glyphs are shelf-packed into texture pages
+ * and only the new glyph's rectangle is uploaded. When every page is full, the page used least
+ * recently is cleared and reused. Pages drawn in the current frame are never evicted.
+ * <p>
+ * A {@link BitmapFont} becomes dynamic by {@link #register registering} an atlas for it. The font itself
+ * only needs a small base set (metrics, software rendering); the renderer takes every glyph from the
+ * atlas. The registry holds fonts weakly: the atlas of a collected font is disposed on the next lookup,
+ * and the renderer {@link #disposeAll() disposes} every atlas when its loop ends. GL thread only.
+ */
+public class DynamicGlyphAtlas {
+
+    public static final int DEFAULT_PAGE_SIZE = 1024;
+    public static final int DEFAULT_MAX_PAGES = 4;
+    // Зазор между глифами, чтобы линейная фильтрация не захватывала соседей
+    private static final int GAP = 1;
+
+    // Динамических шрифтов единицы, поэтому список, а не карта; шрифты держим слабо
+    private static final List<Registration> ATLASES = new ArrayList<>();
+    private static final ReferenceQueue<BitmapFont> COLLECTED = new ReferenceQueue<>();
+
+    private static final class Registration extends WeakReference<BitmapFont> {
+        final DynamicGlyphAtlas atlas;
+
+        Registration(BitmapFont font, DynamicGlyphAtlas atlas) {
+            super(font, COLLECTED);
+            this.atlas = atlas;
+        }
+    }
+
+    /**
+     * Where a glyph lives. {@code page} is -1 for glyphs with nothing to draw (spaces, control chars).
+     */
+    record Glyph(int page, int x, int y, int width, int height) {
+    }
+
+    private static class Page {
+        final int textureId;
+        final List<int[]> shelves = new ArrayList<>(); // {y, height, nextX}
+        int nextShelfY;
+        long lastUsedFrame = -1;
+
+        Page(int textureId) {
+            this.textureId = textureId;
+        }
+    }
+
+    private final Graphics2D graphics;
+    private final FontMetrics metrics;
+    private final BufferedImage scratch;
+    private ByteBuffer upload;
+
+    // Как у AwtBitmapFontGenerator.rasterize: сдвиг и расширение прямоугольника глифа, отступы между глифами
+    private final int offsetX;
+    private final int offsetY;
+    private final int spacingX;
+    private final int spacingY;
+
+    @Getter
+    private final int pageSize;
+    @Getter
+    private final int maxPages;
+    @Getter
+    private final int lineHeight;
+
+    private final Map<Character, Glyph> glyphs = new HashMap<>();
+    private final List<Page> pages = new ArrayList<>();
+
+    @Getter
+    private long rasterized;
+    @Getter
+    private long evictions;
+
+    public DynamicGlyphAtlas(Font font, Map<RenderingHints.Key, Object> hints, int pageSize, int maxPages) {
+        this(font, hints, pageSize, maxPages, 0, 0, 0, 0);
+    }
+
+    /**
+     * Offsets and spacing mean the same as the {@code FontBuilder} settings passed to
+     * {@link com.ancevt.d2d2.engine.desktop.AwtBitmapFontGenerator}, so glyphs match a static font of the
+     * same builder.
+     */
+    public DynamicGlyphAtlas(Font font, Map<RenderingHints.Key, Object> hints, int pageSize, int maxPages,
+                             int offsetX, int offsetY, int spacingX, int spacingY) {
+        if (maxPages < 1 || maxPages > Long.SIZE) {
+            throw new IllegalArgumentException("maxPages must be in 1..64: " + maxPages);
+        }
+        this.pageSize = pageSize;
+        this.maxPages = maxPages;
+        this.offsetX = offsetX;
+        this.offsetY = offsetY;
+        this.spacingX = Math.max(0, spacingX);
+        this.spacingY = Math.max(0, spacingY);
+
+        // Метрики берём с тех же хинтов, что и у генератора: fractional metrics меняют ширины
+        BufferedImage probe = new BufferedImage(1, 1, BufferedImage.TYPE_INT_ARGB);
+        Graphics2D probeGraphics = probe.createGraphics();
+        hints.forEach(probeGraphics::setRenderingHint);
+        FontMetrics probeMetrics = probeGraphics.getFontMetrics(font);
+        this.lineHeight = probeMetrics.getHeight();
+        probeGraphics.dispose();
+
+        int scratchSize = Math.max(lineHeight, font.getSize()) * 2 + Math.abs(offsetX) + Math.abs(offsetY);
+        if (scratchSize + GAP + Math.max(this.spacingX, this.spacingY) > pageSize) {
+            throw new IllegalArgumentException("Page size " + pageSize + " is too small for font size " + font.getSize());
+        }
+        scratch = new BufferedImage(scratchSize, scratchSize, BufferedImage.TYPE_INT_ARGB);
+        graphics = scratch.createGraphics();
+        hints.forEach(graphics::setRenderingHint);
+        graphics.setFont(font);
+        metrics = graphics.getFontMetrics(font);
+    }
+
+    /**
+     * Replaces (and disposes) an atlas already registered for the font.
+     */
+    public static void register(BitmapFont bitmapFont, DynamicGlyphAtlas atlas) {
+        purgeCollected();
+        DynamicGlyphAtlas previous = of(bitmapFont);
+        if (previous != null && previous != atlas) previous.dispose();
+        ATLASES.add(new Registration(bitmapFont, atlas));
+    }
+
+    /**
+     * @return atlas registered for the font, or null for an ordinary bitmap font
+     */
+    public static DynamicGlyphAtlas of(BitmapFont bitmapFont) {
+        if (ATLASES.isEmpty() || bitmapFont == null) return null;
+        purgeCollected();
+        for (Registration registration : ATLASES) {
+            if (registration.get() == bitmapFont) return registration.atlas;
+        }
+        return null;
+    }
+
+    /**
+     * Disposes every registered atlas. Called by the renderer when its loop ends, while the context is alive.
+     */
+    public static void disposeAll() {
+        for (Registration registration : new ArrayList<>(ATLASES)) {
+            registration.atlas.dispose();
+        }
+        ATLASES.clear();
+    }
+
+    // Шрифт собран сборщиком — его страницы больше никто не нарисует
+    private static void purgeCollected() {
+        Reference<? extends BitmapFont> collected;
+        while ((collected = COLLECTED.poll()) != null) {
+            ((Registration) collected).atlas.dispose();
+        }
+    }
+
+    /**
+     * Returns the glyph, rasterising and uploading it if needed, and marks its page as used in
+     * {@code frame}.
+     *
+     * @return null only if every page is full of glyphs drawn in this very frame
+     */
+    Glyph glyph(char c, long frame) {
+        Glyph glyph = glyphs.get(c);
+        if (glyph == null) {
+            glyph = rasterize(c, frame);
+            if (glyph == null) return null;
+            glyphs.put(c, glyph);
+        }
+        if (glyph.page() >= 0) pages.get(glyph.page()).lastUsedFrame = frame;
+        return glyph;
+    }
+
+    /**
+     * @return glyph already in the atlas, without rasterising or touching the LRU state
+     */
+    Glyph peek(char c) {
+        return glyphs.get(c);
+    }
+
+    /**
+     * @return glyph width as laid out, without rasterising: the advance widened by {@code offsetX}
+     */
+    int advance(char c) {
+        return metrics.charWidth(c) + offsetX;
+    }
+
+    int textureId(int page) {
+        return pages.get(page).textureId;
+    }
+
+    public int getPageCount() {
+        return pages.size();
+    }
+
+    public int getGlyphCount() {
+        return glyphs.size();
+    }
+
+    /**
+     * Same rectangle as {@code AwtBitmapFontGenerator.rasterize}: relative to the pen at the baseline it starts
+     * at ({@code offsetX}, {@code offsetY - ascent - leading}) and is {@code advance + offsetX} by
+     * {@code lineHeight + offsetY}. The spacing is left empty around it on the page.
+     */
+    private Glyph rasterize(char c, long frame) {
+        int width = metrics.charWidth(c) + offsetX;
+        int height = Math.max(1, lineHeight + offsetY);
+        if (metrics.charWidth(c) <= 0 || Character.isWhitespace(c) || Character.isISOControl(c)) {
+            return new Glyph(-1, 0, 0, Math.max(width, 0), height);
+        }
+        width = Math.min(Math.max(1, width), scratch.getWidth());
+        height = Math.min(height, scratch.getHeight());
+
+        int[] slot = allocate(width + GAP + spacingX, height + GAP + spacingY, frame);
+        if (slot == null) return null;
+
+        graphics.setComposite(AlphaComposite.Clear);
+        graphics.fillRect(0, 0, width, height);
+        graphics.setComposite(AlphaComposite.SrcOver);
+        graphics.setColor(Color.WHITE);
+        graphics.drawString(String.valueOf(c), -offsetX, metrics.getAscent() + metrics.getLeading() - offsetY);
+
+        uploadGlyph(pages.get(slot[0]), slot[1], slot[2], width, height);
+        rasterized++;
+        return new Glyph(slot[0], slot[1], slot[2], width, height);
+    }
+
+    /**
+     * Shelf packing: the first shelf tall enough with room left, else a new shelf, else a new page,
+     * else the least recently used page is emptied.
+     *
+     * @return {page, x, y} or null
+     */
+    private int[] allocate(int width, int height, long frame) {
+        for (int i = 0; i < pages.size(); i++) {
+            int[] slot = allocateOnPage(i, width, height);
+            if (slot != null) return slot;
+        }
+
+        if (pages.size() < maxPages) {
+            pages.add(new Page(createPageTexture()));
+            return allocateOnPage(pages.size() - 1, width, height);
+        }
+
+        int victim = -1;
+        for (int i = 0; i < pages.size(); i++) {
+            Page page = pages.get(i);
+            if (page.lastUsedFrame >= frame) continue;
+            if (victim < 0 || page.lastUsedFrame < pages.get(victim).lastUsedFrame) victim = i;
+        }
+        if (victim < 0) return null;
+
+        evict(victim);
+        return allocateOnPage(victim, width, height);
+    }
+
+    private int[] allocateOnPage(int pageIndex, int width, int height) {
+        Page page = pages.get(pageIndex);
+        for (int[] shelf : page.shelves) {
+            if (shelf[1] >= height && shelf[2] + width <= pageSize) {
+                int x = shelf[2];
+                shelf[2] += width;
+                return new int[]{pageIndex, x, shelf[0]};
+            }
+        }
+        if (page.nextShelfY + height > pageSize) return null;
+
+        int[] shelf = {page.nextShelfY, height, width};
+        page.shelves.add(shelf);
+        page.nextShelfY += height;
+        return new int[]{pageIndex, 0, shelf[0]};
+    }
+
+    private void evict(int pageIndex) {
+        Page page = pages.get(pageIndex);
+        page.shelves.clear();
+        page.nextShelfY = 0;
+        glyphs.values().removeIf(glyph -> glyph.page() == pageIndex);
+        evictions++;
+    }
+
+    private int createPageTexture() {
+        int textureId = GL11.glGenTextures();
+        GlContextManager.bindTexture(textureId);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, GL12.GL_CLAMP_TO_EDGE);
+        GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, GL12.GL_CLAMP_TO_EDGE);
+
+        // Прозрачная страница: содержимое после glTexImage2D(null) не определено
+        ByteBuffer clear = MemoryUtil.memCalloc(pageSize * pageSize * 4);
+        try {
+            GL11.glTexImage2D(GL11.GL_TEXTURE_2D, 0, GL11.GL_RGBA, pageSize, pageSize, 0, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, clear);
+        } finally {
+            MemoryUtil.memFree(clear);
+        }
+        return textureId;
+    }
+
+    private void uploadGlyph(Page page, int x, int y, int width, int height) {
+        int[] argb = ((DataBufferInt) scratch.getRaster().getDataBuffer()).getData();
+        int stride = scratch.getWidth();
+
+        int bytes = width * height * 4;
+        if (upload == null || upload.capacity() < bytes) {
+            if (upload != null) MemoryUtil.memFree(upload);
+            upload = MemoryUtil.memAlloc(bytes);
+        }
+        upload.clear();
+        for (int row = 0; row < height; row++) {
+            for (int col = 0; col < width; col++) {
+                int pixel = argb[row * stride + col];
+                upload.put((byte) (pixel >> 16)).put((byte) (pixel >> 8)).put((byte) pixel).put((byte) (pixel >>> 24));
+            }
+        }
+        upload.flip();
+
+        GlContextManager.bindTexture(page.textureId);
+        GL11.glPixelStorei(GL11.GL_UNPACK_ALIGNMENT, 4);
+        GL11.glTexSubImage2D(GL11.GL_TEXTURE_2D, 0, x, y, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, upload);
+    }
+
+    /**
+     * Deletes the page textures and unregisters the atlas from every font.
+     */
+    public void dispose() {
+        ATLASES.removeIf(registration -> registration.atlas == this);
+        for (Page page : pages) {
+            GlContextManager.forgetTexture(page.textureId);
+            GL11.glDeleteTextures(page.textureId);
+        }
+        pages.clear();
+        glyphs.clear();
+        graphics.dispose();
+        if (upload != null) {
+            MemoryUtil.memFree(upload);
+            upload = null;
+        }
+    }
+}
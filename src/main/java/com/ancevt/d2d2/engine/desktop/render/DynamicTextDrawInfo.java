@@ -0,0 +1,177 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.scene.Color;
+import com.ancevt.d2d2.scene.text.BitmapText;
+
+import java.nio.FloatBuffer;
+import java.util.List;
+
+/**
+ * {@link BitmapText} whose font has a {@link DynamicGlyphAtlas}. Glyphs are resolved (and rasterised if
+ * new) while nodes are collected. The text then gets one DrawInfo per atlas page it uses, because a batch
+ * has a single texture; each renders only the glyphs of its page.
+ */
+class DynamicTextDrawInfo implements DrawInfo {
+
+    private final BitmapText text;
+    private final DynamicGlyphAtlas atlas;
+    private final int page;
+    private final float a, b, c, d, e, f;
+    private final float alpha;
+
+    private DynamicTextDrawInfo(BitmapText text, DynamicGlyphAtlas atlas, int page,
+                                float a, float b, float c, float d, float e, float f, float alpha) {
+        this.text = text;
+        this.atlas = atlas;
+        this.page = page;
+        this.a = a;
+        this.b = b;
+        this.c = c;
+        this.d = d;
+        this.e = e;
+        this.f = f;
+        this.alpha = alpha;
+    }
+
+    static void collect(BitmapText text, DynamicGlyphAtlas atlas, long frame,
+                        float a, float b, float c, float d, float e, float f, float alpha, List<DrawInfo> drawQueue) {
+        if (text.isEmpty()) return;
+
+        long[] pages = new long[1];
+        layout(text, atlas, frame, (glyph, index, x, y) -> pages[0] |= 1L << glyph.page());
+
+        for (int page = 0; page < atlas.getPageCount(); page++) {
+            if ((pages[0] & 1L << page) != 0) {
+                drawQueue.add(new DynamicTextDrawInfo(text, atlas, page, a, b, c, d, e, f, alpha));
+            }
+        }
+    }
+
+    @Override
+    public ShaderProgramImpl getCustomShader() {
+        return (ShaderProgramImpl) text.getShaderProgram();
+    }
+
+    @Override
+    public int getTextureId() {
+        return atlas.textureId(page);
+    }
+
+    @Override
+    public int render(FloatBuffer buffer, DesktopRenderer renderer) {
+        float size = atlas.getPageSize();
+        float tf = (float) text.getTextureBleedingFix();
+        float vf = (float) text.getVertexBleedingFix();
+        BitmapText.ColorTextData colorData = text.isMulticolor() ? text.getColorTextData() : null;
+        Color textColor = text.getColor();
+
+        int[] glyphCount = new int[1];
+        layout(text, atlas, -1, (glyph, index, x, y) -> {
+            if (glyph.page() != page) return;
+
+            float charW = glyph.width();
+            float charH = glyph.height();
+
+            // Страницы заливаются сверху вниз без переворота, в отличие от атласа BitmapFont
+            float u0 = glyph.x() / size;
+            float v0 = glyph.y() / size;
+            float u1 = (glyph.x() + charW) / size;
+            float v1 = (glyph.y() + charH) / size;
+
+            float px = a * x + b * y + c;
+            float py = d * x + e * y + f;
+            float px1 = a * (x + charW) + b * y + c;
+            float py1 = d * (x + charW) + e * y + f;
+            float px2 = a * (x + charW) + b * (y + charH) + c;
+            float py2 = d * (x + charW) + e * (y + charH) + f;
+            float px3 = a * x + b * (y + charH) + c;
+            float py3 = d * x + e * (y + charH) + f;
+
+            Color color = colorData != null ? colorData.getColoredLetter(index).getColor() : textColor;
+            float r = color.getR() / 255f;
+            float g = color.getG() / 255f;
+            float bCol = color.getB() / 255f;
+
+            buffer.put(px - vf).put(py - vf).put(u0 + tf).put(v0 + tf).put(r).put(g).put(bCol).put(alpha);
+            buffer.put(px1 + vf).put(py1 - vf).put(u1 - tf).put(v0 + tf).put(r).put(g).put(bCol).put(alpha);
+            buffer.put(px2 + vf).put(py2 + vf).put(u1 - tf).put(v1 - tf).put(r).put(g).put(bCol).put(alpha);
+            buffer.put(px3 - vf).put(py3 + vf).put(u0 + tf).put(v1 - tf).put(r).put(g).put(bCol).put(alpha);
+            glyphCount[0]++;
+        });
+        return glyphCount[0];
+    }
+
+    private interface GlyphSink {
+        void accept(DynamicGlyphAtlas.Glyph glyph, int index, float x, float y);
+    }
+
+    /**
+     * Same line breaking as {@link BitmapTextDrawInfo}, but measured with the atlas. With {@code frame} >= 0
+     * missing glyphs are rasterised; with -1 only resident glyphs are looked up.
+     */
+    private static void layout(BitmapText text, DynamicGlyphAtlas atlas, long frame, GlyphSink sink) {
+        float spacing = text.getSpacing();
+        float lineSpacing = text.getLineSpacing();
+        float scaleX = text.getScaleX();
+        float scaleY = text.getScaleY();
+        float lineHeight = atlas.getLineHeight();
+
+        float boundWidth = text.getWidth() + 10; // как в BitmapTextDrawInfo
+        float boundHeight = text.getHeight();
+
+        float cursorX = 0f;
+        float cursorY = text.getBitmapFont().getPaddingTop() * scaleY;
+
+        String content = text.getPlainText();
+
+        for (int i = 0; i < content.length(); i++) {
+            char ch = content.charAt(i);
+
+            if (ch == '\n') {
+                cursorX = 0f;
+                cursorY += (lineHeight + lineSpacing) * scaleY;
+                continue;
+            }
+
+            // В начале строки переносить некуда: иначе длинное «слово» из иероглифов уходит по символу на строку
+            if (text.isWordWrap() && boundWidth > 0 && cursorX > 0) {
+                float nextWordWidth = wordWidth(content, i, atlas, spacing) * scaleX;
+                if (cursorX + nextWordWidth >= boundWidth) {
+                    cursorX = 0f;
+                    cursorY += (lineHeight + lineSpacing) * scaleY;
+                    if (boundHeight > 0 && cursorY > boundHeight - lineHeight) break;
+                }
+            }
+
+            DynamicGlyphAtlas.Glyph glyph = frame >= 0 ? atlas.glyph(ch, frame) : atlas.peek(ch);
+            if (glyph == null) continue;
+
+            float charW = glyph.width();
+            float charH = glyph.height();
+
+            if (cursorX + charW > boundWidth && !text.isWordWrap()) continue;
+
+            if (glyph.page() >= 0) sink.accept(glyph, i, cursorX, cursorY);
+
+            cursorX += charW + spacing;
+
+            if (boundHeight > 0 && cursorY > boundHeight - charH) break;
+        }
+    }
+
+    /**
+     * Width up to the next space; every CJK ideograph is a word of its own, since such text has no spaces.
+     */
+    private static float wordWidth(String content, int from, DynamicGlyphAtlas atlas, float spacing) {
+        float width = 0;
+        for (int i = from; i < content.length(); i++) {
+            char ch = content.charAt(i);
+            if (ch == ' ' || ch == '\n') break;
+            boolean ideograph = Character.isIdeographic(ch);
+            if (ideograph && i > from) break;
+            width += atlas.advance(ch) + spacing;
+            if (ideograph) break;
+        }
+        return width;
+    }
+}
@@ -0,0 +1,255 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.engine.desktop.RenderTargetTexture;
+import lombok.Getter;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL21;
+import org.lwjgl.opengl.GL30;
+import org.lwjgl.opengl.GL32;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * Asynchronous readback of the back buffer or a render target.
+ * <p>
+ * Every captured frame is read into the next pixel-pack PBO of a small ring with a fence behind it.
+ * A PBO is mapped only once its fence has signaled (normally a frame or two later), copied into a
+ * pooled buffer and handed to a background encoder thread, so the GL thread never waits on the GPU.
+ * If the GPU falls a whole ring behind, or the encoder falls behind and all pooled buffers are busy,
+ * frames are dropped (and counted) rather than stalling rendering. Only {@link #close()} waits.
+ */
+public class FrameCapture {
+
+    private static final int DEFAULT_RING_SIZE = 3;
+    private static final int DEFAULT_POOLED_FRAMES = 8;
+
+    private static final CapturedFrame POISON = new CapturedFrame(-1, 0, 0, 0, null);
+
+    private final RenderTargetTexture source;
+    private final FrameCaptureSink sink;
+    private final long maxFrames;
+
+    @Getter
+    private final int width;
+    @Getter
+    private final int height;
+    private final int frameBytes;
+
+    private final int[] pbos;
+    private final long[] fences;
+    private final long[] slotFrameIndex;
+    private final long[] slotTimestamp;
+    private int nextSlot;
+    private int pendingSlots;
+
+    private final BlockingQueue<ByteBuffer> freeBuffers;
+    private final BlockingQueue<CapturedFrame> encodeQueue = new LinkedBlockingQueue<>();
+    private final Thread encoderThread;
+
+    @Getter
+    private long capturedFrames;
+    @Getter
+    private volatile long encodedFrames;
+    @Getter
+    private long droppedFrames;
+    @Getter
+    private boolean stopped;
+    /**
+     * True once the frames in flight have been handed to the encoder and the GL resources released.
+     */
+    @Getter
+    private boolean finished;
+
+    /**
+     * @param source    render target to read, or null for the back buffer (the offscreen FBO in headless mode)
+     * @param maxFrames frames to capture before stopping automatically, 0 for unlimited
+     */
+    public FrameCapture(RenderTargetTexture source, int width, int height, FrameCaptureSink sink, long maxFrames) {
+        this.source = source;
+        this.sink = sink;
+        this.maxFrames = maxFrames;
+        this.width = source != null ? source.getWidth() : width;
+        this.height = source != null ? source.getHeight() : height;
+        this.frameBytes = this.width * this.height * 4;
+
+        pbos = new int[DEFAULT_RING_SIZE];
+        fences = new long[DEFAULT_RING_SIZE];
+        slotFrameIndex = new long[DEFAULT_RING_SIZE];
+        slotTimestamp = new long[DEFAULT_RING_SIZE];
+        for (int i = 0; i < pbos.length; i++) {
+            pbos[i] = GL15.glGenBuffers();
+            GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[i]);
+            GL15.glBufferData(GL21.GL_PIXEL_PACK_BUFFER, frameBytes, GL15.GL_STREAM_READ);
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+
+        freeBuffers = new ArrayBlockingQueue<>(DEFAULT_POOLED_FRAMES);
+        for (int i = 0; i < DEFAULT_POOLED_FRAMES; i++) {
+            freeBuffers.add(BufferUtils.createByteBuffer(frameBytes));
+        }
+
+        encoderThread = new Thread(this::encodeLoop, "d2d2-frame-capture");
+        encoderThread.setDaemon(true);
+        encoderThread.start();
+    }
+
+    /**
+     * Called by the renderer on the GL thread after the frame has been drawn, before the swap.
+     */
+    void onFrameRendered() {
+        if (finished) return;
+
+        collectReady(false);
+
+        if (!stopped) {
+            if (pendingSlots == pbos.length) {
+                // Кольцо заполнено — GPU отстаёт больше чем на кольцо; ждать его нельзя, пропускаем кадр
+                droppedFrames++;
+            } else {
+                readFrame();
+            }
+        }
+
+        // После stop() оставшиеся в кольце кадры забираются следующими кадрами, без ожидания
+        if (stopped && pendingSlots == 0) release();
+    }
+
+    private void readFrame() {
+        int slot = nextSlot;
+        nextSlot = (nextSlot + 1) % pbos.length;
+        pendingSlots++;
+
+        if (source != null) {
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, source.getFboId());
+        }
+        GL11.glPixelStorei(GL11.GL_PACK_ALIGNMENT, 1);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+        GL11.glReadPixels(0, 0, width, height, GL11.GL_RGBA, GL11.GL_UNSIGNED_BYTE, 0L);
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        if (source != null) {
+            GL30.glBindFramebuffer(GL30.GL_READ_FRAMEBUFFER, GlContextManager.getBoundFramebuffer());
+        }
+
+        fences[slot] = GL32.glFenceSync(GL32.GL_SYNC_GPU_COMMANDS_COMPLETE, 0);
+        slotFrameIndex[slot] = capturedFrames++;
+        slotTimestamp[slot] = System.nanoTime();
+
+        if (maxFrames > 0 && capturedFrames >= maxFrames) {
+            stop();
+        }
+    }
+
+    private void collectReady(boolean wait) {
+        while (pendingSlots > 0) {
+            if (!collectOldest(wait)) return;
+        }
+    }
+
+    private boolean collectOldest(boolean wait) {
+        int slot = Math.floorMod(nextSlot - pendingSlots, pbos.length);
+        long fence = fences[slot];
+
+        // Флаг flush и при нулевом таймауте: иначе после stop() забор может так и не сработать
+        int status = GL32.glClientWaitSync(fence, GL32.GL_SYNC_FLUSH_COMMANDS_BIT, wait ? Long.MAX_VALUE : 0L);
+        if (status == GL32.GL_TIMEOUT_EXPIRED) return false;
+
+        GL32.glDeleteSync(fence);
+        fences[slot] = 0;
+        pendingSlots--;
+
+        ByteBuffer target = wait ? takeFreeBuffer() : freeBuffers.poll();
+        if (target == null) {
+            droppedFrames++;
+            return true;
+        }
+
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, pbos[slot]);
+        ByteBuffer mapped = GL30.glMapBufferRange(GL21.GL_PIXEL_PACK_BUFFER, 0, frameBytes, GL30.GL_MAP_READ_BIT);
+        if (mapped != null) {
+            target.clear();
+            target.put(mapped).flip();
+            GL15.glUnmapBuffer(GL21.GL_PIXEL_PACK_BUFFER);
+            encodeQueue.add(new CapturedFrame(slotFrameIndex[slot], width, height, slotTimestamp[slot], target));
+        } else {
+            freeBuffers.add(target);
+            droppedFrames++;
+        }
+        GL15.glBindBuffer(GL21.GL_PIXEL_PACK_BUFFER, 0);
+        return true;
+    }
+
+    private ByteBuffer takeFreeBuffer() {
+        try {
+            return freeBuffers.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+    }
+
+    private void encodeLoop() {
+        try {
+            while (true) {
+                CapturedFrame frame = encodeQueue.take();
+                if (frame == POISON) break;
+                try {
+                    sink.accept(frame);
+                    encodedFrames++;
+                } catch (IOException e) {
+                    log.error(FrameCapture.class, "Could not encode frame " + frame.index(), e);
+                } finally {
+                    freeBuffers.add(frame.pixels());
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } finally {
+            try {
+                sink.close();
+            } catch (IOException e) {
+                log.error(FrameCapture.class, "Could not close capture sink", e);
+            }
+        }
+    }
+
+    /**
+     * Stops capturing. Never blocks: frames still in flight are handed to the encoder by the following
+     * rendered frames, after which the GL resources are released and the capture is {@link #isFinished()
+     * finished}. Must be called on the GL thread. Use {@link #awaitCompletion()} to wait for the encoder.
+     */
+    public void stop() {
+        stopped = true;
+    }
+
+    /**
+     * Stops capturing and waits for the GPU to finish the frames in flight, then releases the GL resources
+     * at once. Meant for shutdown, when there will be no more frames. Must be called on the GL thread.
+     */
+    public void close() {
+        if (finished) return;
+        stopped = true;
+        collectReady(true);
+        release();
+    }
+
+    private void release() {
+        finished = true;
+        for (int i = 0; i < pbos.length; i++) {
+            if (fences[i] != 0) GL32.glDeleteSync(fences[i]);
+            GL15.glDeleteBuffers(pbos[i]);
+        }
+        encodeQueue.add(POISON);
+    }
+
+    public void awaitCompletion() throws InterruptedException {
+        encoderThread.join();
+    }
+}
@@ -0,0 +1,14 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import java.io.IOException;
+
+/**
+ * Consumer of captured frames. Called on the capture's encoder thread, never on the GL thread.
+ */
+public interface FrameCaptureSink {
+
+    void accept(CapturedFrame frame) throws IOException;
+
+    default void close() throws IOException {
+    }
+}
@@ -9,6 +9,7 @@ import org.lwjgl.opengl.*;
 import java.nio.ByteBuffer;
 import java.nio.FloatBuffer;
 import java.nio.IntBuffer;
+import java.util.Arrays;
 
 public class GlContextManager {
 
@@ -23,27 +24,99 @@ public class GlContextManager {
     public int vboId;
     public int eboId;
     public int shaderProgram;
-    public int uProjectionLocation;
     public int uTextureLocation;
 
+    // Общий UBO с per-frame глобалами (projection, time), его читают все программы с блоком D2D2Frame
+    public static final String FRAME_UNIFORM_BLOCK_NAME = "D2D2Frame";
+    public static final int FRAME_UNIFORMS_BINDING = 0;
+    private static final int FRAME_UNIFORMS_FLOATS = 20; // std140: mat4 + float (+ padding до vec4)
+
+    public int frameUboId;
+    private final FloatBuffer frameUniformsBuffer = BufferUtils.createFloatBuffer(FRAME_UNIFORMS_FLOATS);
+
+    @Getter
+    private long frameIndex;
+    @Getter
+    private float frameTime;
+
     @Getter
     private static Texture whiteTexture;
 
     @Getter
     private final float[] projectionMatrix = new float[16];
 
+    // Кэш GL-состояния: все привязки идут через него, чтобы не дёргать драйвер зря.
+    // Контекст один, поэтому состояние статическое (как и whiteTexture).
+    private static final int MAX_TEXTURE_UNITS = 16;
+
+    private static int boundProgram = -1;
+    private static int boundVertexArray = -1;
+    private static int boundArrayBuffer = -1;
+    private static int boundFramebuffer = -1;
+    // В headless-режиме "экран" — это offscreen FBO: bindFramebuffer(0) перенаправляется на него
+    @Getter
+    private static int defaultFramebuffer;
+    private static int activeTextureUnit = -1;
+    private static final int[] boundTextures = new int[MAX_TEXTURE_UNITS];
+    private static int[] textureFilters = new int[256];
+    private static int[] textureWraps = new int[256];
+    private static int blendEnabled = -1;
+    private static int blendSrc = -1;
+    private static int blendDst = -1;
+    private static int blendSrcAlpha = -1;
+    private static int blendDstAlpha = -1;
+    private static int viewportX = -1, viewportY = -1, viewportWidth = -1, viewportHeight = -1;
+
+    @Getter
+    private static long issuedCalls;
+    @Getter
+    private static long avoidedCalls;
+    @Getter
+    private static long programSwitches;
+
+    // До init() — выключенный таймер, чтобы вызывающим не проверять null
+    @Getter
+    private static GpuTimer gpuTimer = new GpuTimer(false);
+    @Getter
+    private static long textureBinds;
+
+    @Getter
+    private int projectionVersion;
+    @Getter
+    private float projectionX;
+    @Getter
+    private float projectionY;
+    @Getter
+    private int projectionWidth;
+    @Getter
+    private int projectionHeight;
+
+    static {
+        invalidateState();
+    }
+
     public GlContextManager(int batchSize, FloatBuffer vertexBuffer) {
         this.batchSize = batchSize;
         this.vertexBuffer = vertexBuffer;
     }
 
     public void setTextureWrap(int textureId, int wrapMode) {
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+        if (textureId < 0) return;
+        textureWraps = ensureCapacity(textureWraps, textureId);
+        if (textureWraps[textureId] == wrapMode) {
+            avoidedCalls += 3;
+            return;
+        }
+        bindTexture(textureId);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_S, wrapMode);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_WRAP_T, wrapMode);
+        textureWraps[textureId] = wrapMode;
+        issuedCalls += 2;
     }
 
     public void init() {
+        gpuTimer = new GpuTimer(GpuTimer.isSupported());
+
         int vertexShader = compileShader(GL20.GL_VERTEX_SHADER, ShaderSources.VERTEX_SHADER);
         int fragmentShader = compileShader(GL20.GL_FRAGMENT_SHADER, ShaderSources.FRAGMENT_SHADER);
 
@@ -57,9 +130,15 @@ public class GlContextManager {
         GL20.glDeleteShader(vertexShader);
         GL20.glDeleteShader(fragmentShader);
 
-        uProjectionLocation = GL20.glGetUniformLocation(shaderProgram, "uProjection");
+        bindFrameUniformBlock(shaderProgram);
         uTextureLocation = GL20.glGetUniformLocation(shaderProgram, "uTexture");
 
+        frameUboId = GL15.glGenBuffers();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, frameUboId);
+        GL15.glBufferData(GL31.GL_UNIFORM_BUFFER, (long) FRAME_UNIFORMS_FLOATS * Float.BYTES, GL15.GL_DYNAMIC_DRAW);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
+        GL30.glBindBufferBase(GL31.GL_UNIFORM_BUFFER, FRAME_UNIFORMS_BINDING, frameUboId);
+
         vaoId = GL30.glGenVertexArrays();
         GL30.glBindVertexArray(vaoId);
 
@@ -100,14 +179,15 @@ public class GlContextManager {
         GL30.glBindVertexArray(0);
         GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, 0);
 
-        GL11.glEnable(GL11.GL_BLEND);
-        GL11.glBlendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
+        invalidateState();
+
+        setBlendEnabled(true);
+        blendFunc(GL11.GL_SRC_ALPHA, GL11.GL_ONE_MINUS_SRC_ALPHA);
         GL11.glDisable(GL11.GL_DEPTH_TEST);
 
-        GL13.glActiveTexture(GL13.GL_TEXTURE0);
-        GL20.glUseProgram(shaderProgram);
+        activeTexture(0);
+        useProgram(shaderProgram);
         GL20.glUniform1i(uTextureLocation, 0);
-        GL20.glUseProgram(0);
 
 
         whiteTexture = createWhiteTexture();
@@ -123,54 +203,111 @@ public class GlContextManager {
         return shaderId;
     }
 
+    /**
+     * The buffer {@link #flushBatch(int)} uploads from.
+     */
+    FloatBuffer getVertexBuffer() {
+        return vertexBuffer;
+    }
+
     public void flushBatch(int spriteCount) {
         if (spriteCount <= 0) return;
 
-        GL30.glBindVertexArray(vaoId);
-        GL15.glBindBuffer(GL15.GL_ELEMENT_ARRAY_BUFFER, eboId);
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+        // EBO — часть состояния VAO, отдельно его привязывать не нужно
+        bindVertexArray(vaoId);
+        bindArrayBuffer(vboId);
 
         vertexBuffer.limit(spriteCount * VERTICES_PER_SPRITE * FLOATS_PER_VERTEX);
         vertexBuffer.position(0);
 
+        int scope = gpuTimer.isBatchTiming() ? gpuTimer.begin(GpuTimer.BATCH) : -1;
+
         GL15.glBufferSubData(GL15.GL_ARRAY_BUFFER, 0, vertexBuffer);
 
         GL11.glDrawElements(GL11.GL_TRIANGLES, spriteCount * INDICES_PER_SPRITE, GL11.GL_UNSIGNED_INT, 0);
 
+        gpuTimer.end(scope);
+
         vertexBuffer.clear();
     }
 
     public void prepareRenderFrame(Color backgroundColor) {
         if (backgroundColor == null) {
-            GL11.glClearColor(0f, 0f, 0f, 0f);
+            prepareRenderFrame(0f, 0f, 0f, 0f);
         } else {
-            GL11.glClearColor(
+            prepareRenderFrame(
                     backgroundColor.getR() / 255f,
                     backgroundColor.getG() / 255f,
                     backgroundColor.getB() / 255f,
                     1f);
         }
+    }
+
+    public void prepareRenderFrame(float r, float g, float b, float a) {
+        GL11.glClearColor(r, g, b, a);
         GL11.glClear(GL11.GL_COLOR_BUFFER_BIT);
-        GL20.glUseProgram(shaderProgram);
-        GL20.glUniformMatrix4fv(uProjectionLocation, false, projectionMatrix);
-        GL30.glBindVertexArray(vaoId);
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vboId);
+
+        frameIndex++;
+        frameTime = System.nanoTime() / 1_000_000_000.0f;
+        uploadFrameUniforms();
+
+        useDefaultProgram();
+        bindVertexArray(vaoId);
+        bindArrayBuffer(vboId);
         vertexBuffer.clear();
     }
 
     public void postRenderFrame() {
-        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, 0);
-        GL30.glBindVertexArray(0);
-        GL20.glUseProgram(0);
+        // Привязки оставляем как есть: следующий кадр привяжет то же самое,
+        // и кэш превратит эти вызовы в no-op.
+    }
+
+    public void useDefaultProgram() {
+        useProgram(shaderProgram);
+    }
+
+    /**
+     * Binds the program's {@code D2D2Frame} uniform block (if declared) to the shared frame UBO.
+     *
+     * @return true if the program declares the block
+     */
+    public static boolean bindFrameUniformBlock(int programId) {
+        int blockIndex = GL31.glGetUniformBlockIndex(programId, FRAME_UNIFORM_BLOCK_NAME);
+        if (blockIndex == GL31.GL_INVALID_INDEX) return false;
+        GL31.glUniformBlockBinding(programId, blockIndex, FRAME_UNIFORMS_BINDING);
+        return true;
+    }
+
+    private void uploadFrameUniforms() {
+        if (frameUboId == 0) return;
+        frameUniformsBuffer.clear();
+        frameUniformsBuffer.put(projectionMatrix);
+        frameUniformsBuffer.put(frameTime).put(0f).put(0f).put(0f);
+        frameUniformsBuffer.flip();
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, frameUboId);
+        GL15.glBufferSubData(GL31.GL_UNIFORM_BUFFER, 0, frameUniformsBuffer);
+        GL15.glBindBuffer(GL31.GL_UNIFORM_BUFFER, 0);
     }
 
     public void setProjection(int width, int height) {
-        GL11.glViewport(0, 0, width, height);
+        setProjection(0f, 0f, width, height);
+    }
 
-        float l = 0;
-        float r = width;
-        float t = 0;
-        float b = height;
+    /**
+     * Maps the rectangle (x, y, width, height) in scene coordinates onto the whole viewport.
+     */
+    public void setProjection(float x, float y, int width, int height) {
+        viewport(0, 0, width, height);
+        projectionVersion++;
+        projectionX = x;
+        projectionY = y;
+        projectionWidth = width;
+        projectionHeight = height;
+
+        float l = x;
+        float r = x + width;
+        float t = y;
+        float b = y + height;
         float n = -1;
         float f = 1;
         for (int i = 0; i < 16; i++) projectionMatrix[i] = 0.0f;
@@ -181,17 +318,213 @@ public class GlContextManager {
         projectionMatrix[13] = -(t + b) / (t - b);
         projectionMatrix[14] = -(f + n) / (f - n);
         projectionMatrix[15] = 1.0f;
+
+        uploadFrameUniforms();
     }
 
     public void setTextureFilter(int textureId, int filter) {
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+        bindTexture(textureId);
+        if (textureId < 0) return;
+        textureFilters = ensureCapacity(textureFilters, textureId);
+        if (textureFilters[textureId] == filter) {
+            avoidedCalls += 2;
+            return;
+        }
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MIN_FILTER, filter);
         GL11.glTexParameteri(GL11.GL_TEXTURE_2D, GL11.GL_TEXTURE_MAG_FILTER, filter);
+        textureFilters[textureId] = filter;
+        issuedCalls += 2;
+    }
+
+    // === Кэшированные привязки ===
+
+    public static int getBoundProgram() {
+        return Math.max(boundProgram, 0);
+    }
+
+    public static void useProgram(int programId) {
+        if (boundProgram == programId) {
+            avoidedCalls++;
+            return;
+        }
+        GL20.glUseProgram(programId);
+        boundProgram = programId;
+        issuedCalls++;
+        programSwitches++;
+    }
+
+    public static void bindVertexArray(int vao) {
+        if (boundVertexArray == vao) {
+            avoidedCalls++;
+            return;
+        }
+        GL30.glBindVertexArray(vao);
+        boundVertexArray = vao;
+        issuedCalls++;
+    }
+
+    public static void bindArrayBuffer(int vbo) {
+        if (boundArrayBuffer == vbo) {
+            avoidedCalls++;
+            return;
+        }
+        GL15.glBindBuffer(GL15.GL_ARRAY_BUFFER, vbo);
+        boundArrayBuffer = vbo;
+        issuedCalls++;
+    }
+
+    public static void setDefaultFramebuffer(int fbo) {
+        defaultFramebuffer = fbo;
+        boundFramebuffer = -1;
+        bindFramebuffer(0);
+    }
+
+    public static void bindFramebuffer(int fbo) {
+        if (fbo == 0) fbo = defaultFramebuffer;
+        if (boundFramebuffer == fbo) {
+            avoidedCalls++;
+            return;
+        }
+        GL30.glBindFramebuffer(GL30.GL_FRAMEBUFFER, fbo);
+        boundFramebuffer = fbo;
+        issuedCalls++;
+    }
+
+    public static int getBoundFramebuffer() {
+        return Math.max(boundFramebuffer, 0);
+    }
+
+    public static void activeTexture(int unit) {
+        if (activeTextureUnit == unit) {
+            avoidedCalls++;
+            return;
+        }
+        GL13.glActiveTexture(GL13.GL_TEXTURE0 + unit);
+        activeTextureUnit = unit;
+        issuedCalls++;
+    }
+
+    public static void bindTexture(int textureId) {
+        if (textureId < 0) return;
+        int unit = Math.max(activeTextureUnit, 0);
+        if (boundTextures[unit] == textureId) {
+            avoidedCalls++;
+            return;
+        }
+        GL11.glBindTexture(GL11.GL_TEXTURE_2D, textureId);
+        boundTextures[unit] = textureId;
+        issuedCalls++;
+        textureBinds++;
+    }
+
+    public static void setBlendEnabled(boolean enabled) {
+        int value = enabled ? 1 : 0;
+        if (blendEnabled == value) {
+            avoidedCalls++;
+            return;
+        }
+        if (enabled) {
+            GL11.glEnable(GL11.GL_BLEND);
+        } else {
+            GL11.glDisable(GL11.GL_BLEND);
+        }
+        blendEnabled = value;
+        issuedCalls++;
+    }
+
+    public static void blendFunc(int src, int dst) {
+        if (blendSrc == src && blendDst == dst && blendSrcAlpha == src && blendDstAlpha == dst) {
+            avoidedCalls++;
+            return;
+        }
+        GL11.glBlendFunc(src, dst);
+        blendSrc = blendSrcAlpha = src;
+        blendDst = blendDstAlpha = dst;
+        issuedCalls++;
+    }
+
+    public static void blendFuncSeparate(int src, int dst, int srcAlpha, int dstAlpha) {
+        if (blendSrc == src && blendDst == dst && blendSrcAlpha == srcAlpha && blendDstAlpha == dstAlpha) {
+            avoidedCalls++;
+            return;
+        }
+        GL14.glBlendFuncSeparate(src, dst, srcAlpha, dstAlpha);
+        blendSrc = src;
+        blendDst = dst;
+        blendSrcAlpha = srcAlpha;
+        blendDstAlpha = dstAlpha;
+        issuedCalls++;
+    }
+
+    public static void viewport(int x, int y, int width, int height) {
+        if (viewportX == x && viewportY == y && viewportWidth == width && viewportHeight == height) {
+            avoidedCalls++;
+            return;
+        }
+        GL11.glViewport(x, y, width, height);
+        viewportX = x;
+        viewportY = y;
+        viewportWidth = width;
+        viewportHeight = height;
+        issuedCalls++;
+    }
+
+    /**
+     * Must be called when a texture id is deleted, because GL may hand the same id out again.
+     */
+    public static void forgetTexture(int textureId) {
+        if (textureId < 0) return;
+        if (textureId < textureFilters.length) textureFilters[textureId] = 0;
+        if (textureId < textureWraps.length) textureWraps[textureId] = 0;
+        for (int i = 0; i < boundTextures.length; i++) {
+            if (boundTextures[i] == textureId) boundTextures[i] = -1;
+        }
+    }
+
+    /**
+     * Drops all cached state. Call after any code touches GL state bypassing this class.
+     */
+    public static void invalidateState() {
+        boundProgram = -1;
+        boundVertexArray = -1;
+        boundArrayBuffer = -1;
+        boundFramebuffer = -1;
+        activeTextureUnit = -1;
+        Arrays.fill(boundTextures, -1);
+        Arrays.fill(textureFilters, 0);
+        Arrays.fill(textureWraps, 0);
+        blendEnabled = -1;
+        blendSrc = -1;
+        blendDst = -1;
+        blendSrcAlpha = -1;
+        blendDstAlpha = -1;
+        viewportX = viewportY = viewportWidth = viewportHeight = -1;
+    }
+
+    public static void resetCallCounters() {
+        issuedCalls = 0;
+        avoidedCalls = 0;
+        programSwitches = 0;
+        textureBinds = 0;
+    }
+
+    private static int[] ensureCapacity(int[] array, int index) {
+        if (index < array.length) return array;
+        int newLength = array.length;
+        while (newLength <= index) newLength *= 2;
+        return Arrays.copyOf(array, newLength);
+    }
+
+    /**
+     * Stands in for the white texture when there is no GL context (see {@link SoftwareRenderer}).
+     */
+    static void useWhiteTexturePlaceholder() {
+        if (whiteTexture == null) whiteTexture = new Texture(0, 1, 1);
     }
 
     private static Texture createWhiteTexture() {
         int texId = GL11.glGenTextures();
-        GL11.glBindTexture(GL11.GL_TEXTURE_2D, texId);
+        bindTexture(texId);
         ByteBuffer buffer = BufferUtils.createByteBuffer(4);
         buffer.put((byte) 255).put((byte) 255).put((byte) 255).put((byte) 255).flip(); // RGBA white
 
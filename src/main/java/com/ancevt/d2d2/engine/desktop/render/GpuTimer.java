@@ -0,0 +1,182 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import lombok.Getter;
+import lombok.Setter;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL15;
+import org.lwjgl.opengl.GL33;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * GPU time of frames and render passes measured with {@code GL_TIMESTAMP} query pairs.
+ * <p>
+ * Each frame writes its queries into one slot of a {@value #RING_SIZE}-slot ring and the slot is read back only
+ * when the ring comes around to it again, so results lag a few frames but reading never stalls: if a slot is
+ * still not available by then it is dropped. Timestamp pairs are used instead of {@code GL_TIME_ELAPSED}
+ * because elapsed-time queries cannot nest, and passes and batches happen inside the frame.
+ * <p>
+ * Scopes may be opened at any time between two frames (e.g. {@code renderGroupToTexture} from a tick
+ * handler); they are attributed to the frame that ends next.
+ */
+public class GpuTimer {
+
+    public static final String PROPERTY_ENABLED = "d2d2.gpu.timer.enabled";
+    public static final String PROPERTY_BATCHES = "d2d2.gpu.timer.batches";
+
+    public static final String FRAME = "frame";
+    public static final String RENDER_TO_TEXTURE = "renderToTexture";
+    public static final String CACHE_AS_BITMAP = "cacheAsBitmap";
+    public static final String BATCH = "batch";
+
+    private static final int RING_SIZE = 4;
+    private static final int MAX_SCOPES = 256;
+
+    private final boolean enabled;
+
+    private final int[][] queries = new int[RING_SIZE][];
+    private final String[][] labels = new String[RING_SIZE][MAX_SCOPES];
+    private final boolean[][] ended = new boolean[RING_SIZE][MAX_SCOPES];
+    private final int[] scopeCounts = new int[RING_SIZE];
+    private final int[] lastQuery = new int[RING_SIZE];
+    private final long[] slotFrameIndex = new long[RING_SIZE];
+    private final boolean[] pending = new boolean[RING_SIZE];
+    private int slot;
+    private long frameCounter;
+
+    /**
+     * Times every flushBatch as its own scope. Costs two queries per batch, so off by default.
+     */
+    @Getter
+    @Setter
+    private boolean batchTiming = Boolean.getBoolean(PROPERTY_BATCHES);
+
+    @Getter
+    private volatile long lastFrameNanos;
+    @Getter
+    private volatile long lastResolvedFrame;
+    @Getter
+    private long droppedFrames;
+
+    // Сумма по каждой метке за последний прочитанный кадр
+    private volatile Map<String, Long> lastPassNanos = Map.of();
+
+    GpuTimer(boolean enabled) {
+        this.enabled = enabled;
+        if (enabled) {
+            for (int i = 0; i < RING_SIZE; i++) {
+                queries[i] = new int[MAX_SCOPES * 2];
+                GL15.glGenQueries(queries[i]);
+            }
+            openSlot();
+        }
+    }
+
+    static boolean isSupported() {
+        if ("false".equalsIgnoreCase(System.getProperty(PROPERTY_ENABLED))) return false;
+        GLCapabilities caps = GL.getCapabilities();
+        return caps.OpenGL33 || caps.GL_ARB_timer_query;
+    }
+
+    public boolean isEnabled() {
+        return enabled;
+    }
+
+    void beginFrame() {
+        if (!enabled) return;
+        // Scope 0 зарезервирован под кадр
+        GL33.glQueryCounter(queries[slot][0], GL33.GL_TIMESTAMP);
+        labels[slot][0] = FRAME;
+        lastQuery[slot] = queries[slot][0];
+    }
+
+    void endFrame() {
+        if (!enabled || labels[slot][0] == null) return;
+        GL33.glQueryCounter(queries[slot][1], GL33.GL_TIMESTAMP);
+        ended[slot][0] = true;
+        lastQuery[slot] = queries[slot][1];
+
+        pending[slot] = true;
+        slotFrameIndex[slot] = ++frameCounter;
+        slot = (slot + 1) % RING_SIZE;
+        openSlot();
+    }
+
+    /**
+     * @return scope handle for {@link #end(int)}, -1 if timing is off or the frame ran out of scopes
+     */
+    public int begin(String label) {
+        if (!enabled) return -1;
+        int scope = scopeCounts[slot];
+        if (scope == MAX_SCOPES) return -1;
+        scopeCounts[slot] = scope + 1;
+
+        int query = queries[slot][scope * 2];
+        GL33.glQueryCounter(query, GL33.GL_TIMESTAMP);
+        labels[slot][scope] = label;
+        ended[slot][scope] = false;
+        lastQuery[slot] = query;
+        return scope;
+    }
+
+    public void end(int scope) {
+        if (scope < 0) return;
+        int query = queries[slot][scope * 2 + 1];
+        GL33.glQueryCounter(query, GL33.GL_TIMESTAMP);
+        ended[slot][scope] = true;
+        lastQuery[slot] = query;
+    }
+
+    /**
+     * GPU time of the last read-back frame summed per scope label, in nanoseconds.
+     */
+    public Map<String, Long> getLastPassNanos() {
+        return lastPassNanos;
+    }
+
+    public double getLastFrameMillis() {
+        return lastFrameNanos / 1_000_000.0;
+    }
+
+    private void openSlot() {
+        if (pending[slot]) resolve(slot);
+        scopeCounts[slot] = 1;
+        labels[slot][0] = null;
+        ended[slot][0] = false;
+    }
+
+    private void resolve(int s) {
+        pending[s] = false;
+
+        // Таймстампы пишутся по порядку: если готов последний, готовы все
+        if (GL15.glGetQueryObjecti(lastQuery[s], GL15.GL_QUERY_RESULT_AVAILABLE) == 0) {
+            droppedFrames++;
+            return;
+        }
+
+        Map<String, Long> passes = new HashMap<>();
+        for (int scope = 0; scope < scopeCounts[s]; scope++) {
+            if (labels[s][scope] == null || !ended[s][scope]) continue;
+            long start = GL33.glGetQueryObjecti64(queries[s][scope * 2], GL15.GL_QUERY_RESULT);
+            long end = GL33.glGetQueryObjecti64(queries[s][scope * 2 + 1], GL15.GL_QUERY_RESULT);
+            long nanos = Math.max(0, end - start);
+            if (scope == 0) {
+                lastFrameNanos = nanos;
+            } else {
+                passes.merge(labels[s][scope], nanos, Long::sum);
+            }
+        }
+
+        lastPassNanos = passes;
+        lastResolvedFrame = slotFrameIndex[s];
+    }
+
+    void dispose() {
+        if (!enabled) return;
+        for (int[] ids : queries) {
+            GL15.glDeleteQueries(ids);
+        }
+    }
+}
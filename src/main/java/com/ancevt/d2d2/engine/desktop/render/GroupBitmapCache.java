@@ -0,0 +1,61 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.engine.desktop.RenderTargetPool;
+import com.ancevt.d2d2.engine.desktop.RenderTargetTexture;
+import com.ancevt.d2d2.scene.Group;
+
+/**
+ * Render target holding a pre-rendered subtree of a group, drawn as one premultiplied quad.
+ * <p>
+ * Changes are detected with a {@link NodeSignature} hashed from every descendant's drawable properties, so
+ * moving, scaling or fading the cached group itself never triggers a re-render.
+ */
+class GroupBitmapCache {
+
+    static final int MAX_SIZE = 4096;
+
+    /**
+     * A cache not drawn for this many frames (its group left the stage) is dropped with its render target.
+     */
+    static final int MAX_UNVISITED_FRAMES = 300;
+
+    final Group group;
+
+    RenderTargetTexture target;
+    long signature;
+    boolean valid;
+    boolean forceRefresh = true;
+    long lastVisitedFrame;
+
+    // Локальные границы поддерева, в которые отрендерен таргет
+    int originX;
+    int originY;
+    int width;
+    int height;
+
+    GroupBitmapCache(Group group) {
+        this.group = group;
+    }
+
+    void resize(int originX, int originY, int width, int height) {
+        this.originX = originX;
+        this.originY = originY;
+        if (target != null && (target.getWidth() != width || target.getHeight() != height)) {
+            RenderTargetPool.getInstance().release(target);
+            target = null;
+        }
+        if (target == null) {
+            target = RenderTargetPool.getInstance().acquire(width, height);
+        }
+        this.width = width;
+        this.height = height;
+    }
+
+    void dispose() {
+        if (target != null) {
+            RenderTargetPool.getInstance().release(target);
+            target = null;
+        }
+        valid = false;
+    }
+}
@@ -0,0 +1,142 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.engine.desktop.node.BitmapCanvasGpu;
+import com.ancevt.d2d2.scene.Color;
+import com.ancevt.d2d2.scene.Node;
+import com.ancevt.d2d2.scene.Sprite;
+import com.ancevt.d2d2.scene.shape.FreeShape;
+import com.ancevt.d2d2.scene.shape.LineBatch;
+import com.ancevt.d2d2.scene.shape.RectangleShape;
+import com.ancevt.d2d2.scene.shape.TriangleInfo;
+import com.ancevt.d2d2.scene.shape.Vertex;
+import com.ancevt.d2d2.scene.text.BitmapText;
+import com.ancevt.d2d2.scene.texture.TextureRegion;
+
+/**
+ * FNV-1a hash of everything the DrawInfos read from a node, shared by {@link SceneChangeTracker} and
+ * {@link GroupBitmapCache} so both notice the same changes. A property read by a DrawInfo but missing here
+ * means a stale frame, so the two have to be kept in step.
+ */
+final class NodeSignature {
+
+    static final long FNV_OFFSET = 0xcbf29ce484222325L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+
+    private NodeSignature() {
+    }
+
+    /**
+     * Hashes the node's own drawable state (not its children).
+     */
+    static long mixNode(long h, Node node) {
+        h = mix(h, System.identityHashCode(node));
+        h = mix(h, node.getX());
+        h = mix(h, node.getY());
+        h = mix(h, node.getScaleX());
+        h = mix(h, node.getScaleY());
+        h = mix(h, node.getRotation());
+        h = mix(h, node.getAlpha());
+
+        if (node instanceof Sprite sprite) {
+            h = mixRegion(h, sprite.getTextureRegion());
+            h = mixColor(h, sprite.getColor());
+            h = mix(h, sprite.getRepeatX());
+            h = mix(h, sprite.getRepeatY());
+            h = mixShader(h, sprite.getShaderProgram());
+        } else if (node instanceof BitmapText text) {
+            h = mix(h, System.identityHashCode(text.getBitmapFont()));
+            h = mix(h, text.getText() == null ? 0 : text.getText().hashCode());
+            h = mixColor(h, text.getColor());
+            h = mix(h, text.getWidth());
+            h = mix(h, text.getHeight());
+            h = mix(h, text.getSpacing());
+            h = mix(h, text.getLineSpacing());
+            h = mix(h, (float) text.getTextureBleedingFix());
+            h = mix(h, (float) text.getVertexBleedingFix());
+            h = mix(h, (text.isWordWrap() ? 1 : 0) | (text.isMulticolor() ? 2 : 0) | (text.isCacheAsSprite() ? 4 : 0));
+            h = mixShader(h, text.getShaderProgram());
+        } else if (node instanceof RectangleShape rect) {
+            h = mix(h, rect.getWidth());
+            h = mix(h, rect.getHeight());
+            h = mixRegion(h, rect.getTextureRegion());
+            h = mix(h, rect.getTextureScaleX());
+            h = mix(h, rect.getTextureScaleY());
+            h = mix(h, rect.getTextureRotation());
+            h = mix(h, rect.getTextureURepeat());
+            h = mix(h, rect.getTextureVRepeat());
+            h = mixColor(h, rect.getColor());
+            h = mixShader(h, rect.getShaderProgram());
+        } else if (node instanceof FreeShape shape) {
+            // Вершины задают рамку для UV, треугольники — геометрию
+            for (Vertex v : shape.getVertices()) {
+                h = mix(h, v.getX());
+                h = mix(h, v.getY());
+            }
+            for (TriangleInfo t : shape.getTriangleInfos()) {
+                h = mix(h, t.getX1());
+                h = mix(h, t.getY1());
+                h = mix(h, t.getX2());
+                h = mix(h, t.getY2());
+                h = mix(h, t.getX3());
+                h = mix(h, t.getY3());
+            }
+            h = mixRegion(h, shape.getTextureRegion());
+            h = mix(h, shape.getTextureURepeat());
+            h = mix(h, shape.getTextureVRepeat());
+            h = mix(h, shape.getTextureScaleX());
+            h = mix(h, shape.getTextureScaleY());
+            h = mix(h, shape.getTextureRotation());
+            h = mixColor(h, shape.getColor());
+            h = mixShader(h, shape.getShaderProgram());
+        } else if (node instanceof LineBatch batch) {
+            for (LineBatch.Line line : batch.getLines()) {
+                h = mix(h, line.getVertexA().x);
+                h = mix(h, line.getVertexA().y);
+                h = mix(h, line.getVertexB().x);
+                h = mix(h, line.getVertexB().y);
+            }
+            h = mix(h, batch.getLineWidth());
+            h = mixColor(h, batch.getColor());
+            h = mixShader(h, batch.getShaderProgram());
+        } else if (node instanceof BitmapCanvasGpu canvas) {
+            // Грязный холст всегда новый кадр: markClean() делает только отрисовка
+            if (canvas.isDirty()) h = mix(h, System.nanoTime());
+            h = mix(h, canvas.getWidth());
+            h = mix(h, canvas.getHeight());
+            h = mixShader(h, canvas.getShaderProgram());
+        }
+        return h;
+    }
+
+    static long mixRegion(long h, TextureRegion region) {
+        if (region == null) return mix(h, 0);
+        h = mix(h, System.identityHashCode(region.getTexture()));
+        h = mix(h, region.getX());
+        h = mix(h, region.getY());
+        h = mix(h, region.getWidth());
+        return mix(h, region.getHeight());
+    }
+
+    static long mixColor(long h, Color color) {
+        if (color == null) return mix(h, -1);
+        return mix(h, color.getR() << 16 | color.getG() << 8 | color.getB());
+    }
+
+    static long mixShader(long h, Object shader) {
+        if (shader == null) return mix(h, 0);
+        h = mix(h, System.identityHashCode(shader));
+        // Неотправленные униформы или uTime — значит, картинка изменится
+        if (shader instanceof ShaderProgramImpl impl && (impl.hasDirtyUniforms() || impl.usesFrameTime())) {
+            h = mix(h, System.nanoTime());
+        }
+        return h;
+    }
+
+    static long mix(long h, float value) {
+        return mix(h, Float.floatToRawIntBits(value));
+    }
+
+    static long mix(long h, long value) {
+        return (h ^ value) * FNV_PRIME;
+    }
+}
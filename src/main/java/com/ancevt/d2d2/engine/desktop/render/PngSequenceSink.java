@@ -0,0 +1,66 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import javax.imageio.ImageIO;
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBufferByte;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+/**
+ * Writes every frame as {@code <prefix>00000.png}, {@code <prefix>00001.png}, ...
+ * With {@code singleFile} set, writes the first frame to exactly the given path (screenshots).
+ */
+public class PngSequenceSink implements FrameCaptureSink {
+
+    private final Path path;
+    private final String prefix;
+    private final boolean singleFile;
+
+    public PngSequenceSink(Path directory, String prefix) {
+        this.path = directory;
+        this.prefix = prefix;
+        this.singleFile = false;
+    }
+
+    private PngSequenceSink(Path file) {
+        this.path = file;
+        this.prefix = null;
+        this.singleFile = true;
+    }
+
+    public static PngSequenceSink singleFile(Path file) {
+        return new PngSequenceSink(file);
+    }
+
+    @Override
+    public void accept(CapturedFrame frame) throws IOException {
+        Path file = singleFile ? path : path.resolve(prefix + "%05d.png".formatted(frame.index()));
+        if (file.getParent() != null) Files.createDirectories(file.getParent());
+        ImageIO.write(toImage(frame), "png", file.toFile());
+    }
+
+    static BufferedImage toImage(CapturedFrame frame) {
+        int w = frame.width();
+        int h = frame.height();
+        BufferedImage image = new BufferedImage(w, h, BufferedImage.TYPE_4BYTE_ABGR);
+        byte[] dst = ((DataBufferByte) image.getRaster().getDataBuffer()).getData();
+        ByteBuffer src = frame.pixels();
+
+        // GL отдаёт строки снизу вверх и RGBA, а BufferedImage — сверху вниз и ABGR
+        for (int y = 0; y < h; y++) {
+            int srcRow = (h - 1 - y) * w * 4;
+            int dstRow = y * w * 4;
+            for (int x = 0; x < w; x++) {
+                int s = srcRow + x * 4;
+                int d = dstRow + x * 4;
+                dst[d] = src.get(s + 3);
+                dst[d + 1] = src.get(s + 2);
+                dst[d + 2] = src.get(s + 1);
+                dst[d + 3] = src.get(s);
+            }
+        }
+        return image;
+    }
+}
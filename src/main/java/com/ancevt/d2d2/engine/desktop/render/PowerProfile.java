@@ -0,0 +1,82 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+/**
+ * How the windowed render loop behaves in the background and how much time it may spend rendering.
+ *
+ * @param whenIconified      policy while the window is minimised
+ * @param whenUnfocused      policy while the window is visible but not focused
+ * @param backgroundTickRate ticks per second under {@link Policy#LOW_TICK_RATE}
+ * @param maxRenderDuty      share of wall time rendering may take (0..1]; below 1 the frame rate is lowered
+ *                           adaptively from the measured frame cost, 1 disables adaptation
+ * @param minFrameRate       adaptive frame rate never goes below this
+ */
+public record PowerProfile(Policy whenIconified,
+                           Policy whenUnfocused,
+                           int backgroundTickRate,
+                           float maxRenderDuty,
+                           int minFrameRate) {
+
+    public static final String PROPERTY = "d2d2.power.profile";
+
+    public enum Policy {
+        /**
+         * Tick and render at the full rate.
+         */
+        FULL,
+        /**
+         * Tick at the full rate, but do not render or present.
+         */
+        TICK_ONLY,
+        /**
+         * Tick at {@code backgroundTickRate}, do not render.
+         */
+        LOW_TICK_RATE,
+        /**
+         * No ticks and no rendering; the loop sleeps until a window event arrives.
+         */
+        PAUSE
+    }
+
+    /**
+     * Always full rate (the behaviour before profiles existed).
+     */
+    public static final PowerProfile PERFORMANCE = new PowerProfile(Policy.FULL, Policy.FULL, 0, 1f, 0);
+
+    public static final PowerProfile BALANCED = new PowerProfile(Policy.LOW_TICK_RATE, Policy.FULL, 10, 1f, 0);
+
+    /**
+     * Paused when minimised, slow ticks and no rendering when unfocused; in the foreground rendering is kept
+     * under a quarter of the time, down to 20 fps.
+     */
+    public static final PowerProfile BATTERY = new PowerProfile(Policy.PAUSE, Policy.LOW_TICK_RATE, 10, 0.25f, 20);
+
+    public PowerProfile {
+        if (maxRenderDuty <= 0f || maxRenderDuty > 1f) {
+            throw new IllegalArgumentException("maxRenderDuty must be in (0, 1]: " + maxRenderDuty);
+        }
+    }
+
+    Policy policy(boolean iconified, boolean focused) {
+        if (iconified) return whenIconified;
+        if (!focused) return whenUnfocused;
+        return Policy.FULL;
+    }
+
+    boolean isAdaptive() {
+        return maxRenderDuty < 1f;
+    }
+
+    /**
+     * @return profile named by {@value #PROPERTY} (performance, balanced, battery), PERFORMANCE if unset
+     */
+    static PowerProfile fromSystemProperty() {
+        String name = System.getProperty(PROPERTY);
+        if (name == null) return PERFORMANCE;
+        return switch (name.toLowerCase()) {
+            case "performance" -> PERFORMANCE;
+            case "balanced" -> BALANCED;
+            case "battery" -> BATTERY;
+            default -> throw new IllegalArgumentException("Unknown power profile: " + name);
+        };
+    }
+}
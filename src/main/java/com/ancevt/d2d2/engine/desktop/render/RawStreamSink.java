@@ -0,0 +1,35 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+
+/**
+ * Writes frames as a raw top-down RGBA stream, e.g. for {@code ffmpeg -f rawvideo -pix_fmt rgba -s WxH -i -}.
+ */
+public class RawStreamSink implements FrameCaptureSink {
+
+    private final OutputStream outputStream;
+    private byte[] row;
+
+    public RawStreamSink(OutputStream outputStream) {
+        this.outputStream = outputStream;
+    }
+
+    @Override
+    public void accept(CapturedFrame frame) throws IOException {
+        int stride = frame.width() * 4;
+        if (row == null || row.length != stride) row = new byte[stride];
+
+        ByteBuffer pixels = frame.pixels();
+        for (int y = frame.height() - 1; y >= 0; y--) {
+            pixels.get(y * stride, row);
+            outputStream.write(row);
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        outputStream.close();
+    }
+}
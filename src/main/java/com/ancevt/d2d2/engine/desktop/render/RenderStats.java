@@ -0,0 +1,312 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import lombok.Getter;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Arrays;
+
+import static com.ancevt.d2d2.D2D2.log;
+
+/**
+ * Per-frame counters and phase timings of {@link DesktopRenderer}.
+ * <p>
+ * The render thread accumulates into the current frame and publishes an immutable {@link Frame} when it ends,
+ * so {@link #getLastFrame()} and the JMX getters are safe to read from any thread. Frame times (end to end of
+ * consecutive frames) go into a rolling histogram of the last {@value #WINDOW} frames with 0.1 ms buckets.
+ */
+public class RenderStats implements RenderStatsMBean {
+
+    public static final String OBJECT_NAME = "com.ancevt.d2d2:type=RenderStats";
+    public static final String JMX_PROPERTY = "d2d2.jmx.enabled";
+
+    public enum FlushReason {
+        TEXTURE, SHADER, BLEND, BATCH_FULL, END
+    }
+
+    /**
+     * Snapshot of one finished frame. Times are in nanoseconds. The GPU time is the latest one read back
+     * by {@link GpuTimer}, which lags a few frames behind.
+     */
+    public record Frame(long frameIndex,
+                        int drawCalls,
+                        int flushesByTexture,
+                        int flushesByShader,
+                        int flushesByBlend,
+                        int flushesByBatchFull,
+                        int quads,
+                        long bytesStreamed,
+                        int shaderSwitches,
+                        int textureBinds,
+                        long collectNanos,
+                        long vertexNanos,
+                        long submitNanos,
+                        long frameNanos,
+                        long gpuFrameNanos) {
+
+        static final Frame EMPTY = new Frame(0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0, 0);
+
+        public int vertices() {
+            return quads * 4;
+        }
+    }
+
+    static final int WINDOW = 1024;
+    private static final int BUCKETS = 2500; // 0.1 мс на корзину, до 250 мс
+    private static final long BUCKET_NANOS = 100_000L;
+    private static final int BYTES_PER_QUAD = 4 * 8 * Float.BYTES;
+
+    @Getter
+    private volatile Frame lastFrame = Frame.EMPTY;
+    private volatile long lastSwapNanos;
+
+    // Текущий кадр — трогает только поток рендера
+    private long frameIndex;
+    private int drawCalls;
+    private final int[] flushes = new int[FlushReason.values().length];
+    private int quads;
+    private long collectNanos;
+    private long vertexNanos;
+    private long submitNanos;
+    private long programSwitchesAtStart;
+    private long textureBindsAtStart;
+    private long lastFrameEnd;
+
+    @Getter
+    private volatile long totalDrawCalls;
+    @Getter
+    private volatile long totalBytesStreamed;
+
+    private final int[] histogram = new int[BUCKETS + 1];
+    private final int[] window = new int[WINDOW];
+    private int windowSize;
+    private int windowPos;
+
+    private ObjectName registeredName;
+
+    // === Запись (поток рендера) ===
+
+    void beginFrame() {
+        drawCalls = 0;
+        Arrays.fill(flushes, 0);
+        quads = 0;
+        collectNanos = 0;
+        vertexNanos = 0;
+        submitNanos = 0;
+        programSwitchesAtStart = GlContextManager.getProgramSwitches();
+        textureBindsAtStart = GlContextManager.getTextureBinds();
+    }
+
+    void addCollectNanos(long nanos) {
+        collectNanos += nanos;
+    }
+
+    void addVertexNanos(long nanos) {
+        vertexNanos += nanos;
+    }
+
+    void addSubmitNanos(long nanos) {
+        submitNanos += nanos;
+    }
+
+    void onFlush(FlushReason reason, int quadCount) {
+        drawCalls++;
+        flushes[reason.ordinal()]++;
+        quads += quadCount;
+        totalDrawCalls++;
+        totalBytesStreamed += (long) quadCount * BYTES_PER_QUAD;
+    }
+
+    void endFrame() {
+        long now = System.nanoTime();
+        long frameNanos = lastFrameEnd == 0 ? 0 : now - lastFrameEnd;
+        lastFrameEnd = now;
+
+        lastFrame = new Frame(
+                ++frameIndex,
+                drawCalls,
+                flushes[FlushReason.TEXTURE.ordinal()],
+                flushes[FlushReason.SHADER.ordinal()],
+                flushes[FlushReason.BLEND.ordinal()],
+                flushes[FlushReason.BATCH_FULL.ordinal()],
+                quads,
+                (long) quads * BYTES_PER_QUAD,
+                (int) Math.max(0, GlContextManager.getProgramSwitches() - programSwitchesAtStart),
+                (int) Math.max(0, GlContextManager.getTextureBinds() - textureBindsAtStart),
+                collectNanos,
+                vertexNanos,
+                submitNanos,
+                frameNanos,
+                GlContextManager.getGpuTimer().getLastFrameNanos()
+        );
+
+        if (frameNanos > 0) addFrameTime(frameNanos);
+    }
+
+    void recordSwap(long nanos) {
+        lastSwapNanos = nanos;
+    }
+
+    private synchronized void addFrameTime(long nanos) {
+        int bucket = (int) Math.min(BUCKETS, nanos / BUCKET_NANOS);
+        if (windowSize == WINDOW) {
+            histogram[window[windowPos]]--;
+        } else {
+            windowSize++;
+        }
+        window[windowPos] = bucket;
+        windowPos = (windowPos + 1) % WINDOW;
+        histogram[bucket]++;
+    }
+
+    /**
+     * @param percentile 0..100
+     * @return upper edge of the bucket holding the percentile, in milliseconds
+     */
+    public synchronized double getFrameTimePercentileMillis(double percentile) {
+        if (windowSize == 0) return 0;
+        long rank = (long) Math.ceil(percentile / 100.0 * windowSize);
+        long seen = 0;
+        for (int i = 0; i <= BUCKETS; i++) {
+            seen += histogram[i];
+            if (seen >= Math.max(1, rank)) return (i + 1) * BUCKET_NANOS / 1_000_000.0;
+        }
+        return (BUCKETS + 1) * BUCKET_NANOS / 1_000_000.0;
+    }
+
+    @Override
+    public synchronized void resetHistogram() {
+        Arrays.fill(histogram, 0);
+        windowSize = 0;
+        windowPos = 0;
+    }
+
+    // === JMX ===
+
+    public void registerMBean() {
+        if ("false".equalsIgnoreCase(System.getProperty(JMX_PROPERTY)) || registeredName != null) return;
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = new ObjectName(OBJECT_NAME);
+            if (server.isRegistered(name)) {
+                name = new ObjectName(OBJECT_NAME + ",id=" + System.identityHashCode(this));
+            }
+            server.registerMBean(this, name);
+            registeredName = name;
+        } catch (JMException e) {
+            log.error(RenderStats.class, "Could not register render stats MBean", e);
+        }
+    }
+
+    public void unregisterMBean() {
+        if (registeredName == null) return;
+        try {
+            ManagementFactory.getPlatformMBeanServer().unregisterMBean(registeredName);
+        } catch (JMException e) {
+            log.error(RenderStats.class, "Could not unregister render stats MBean", e);
+        }
+        registeredName = null;
+    }
+
+    @Override
+    public long getFrameIndex() {
+        return lastFrame.frameIndex();
+    }
+
+    @Override
+    public int getDrawCalls() {
+        return lastFrame.drawCalls();
+    }
+
+    @Override
+    public int getFlushesByTexture() {
+        return lastFrame.flushesByTexture();
+    }
+
+    @Override
+    public int getFlushesByShader() {
+        return lastFrame.flushesByShader();
+    }
+
+    @Override
+    public int getFlushesByBlend() {
+        return lastFrame.flushesByBlend();
+    }
+
+    @Override
+    public int getFlushesByBatchFull() {
+        return lastFrame.flushesByBatchFull();
+    }
+
+    @Override
+    public int getQuads() {
+        return lastFrame.quads();
+    }
+
+    @Override
+    public int getVertices() {
+        return lastFrame.vertices();
+    }
+
+    @Override
+    public long getBytesStreamed() {
+        return lastFrame.bytesStreamed();
+    }
+
+    @Override
+    public int getShaderSwitches() {
+        return lastFrame.shaderSwitches();
+    }
+
+    @Override
+    public int getTextureBinds() {
+        return lastFrame.textureBinds();
+    }
+
+    @Override
+    public double getCollectMillis() {
+        return lastFrame.collectNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public double getVertexMillis() {
+        return lastFrame.vertexNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public double getSubmitMillis() {
+        return lastFrame.submitNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public double getSwapMillis() {
+        return lastSwapNanos / 1_000_000.0;
+    }
+
+    @Override
+    public double getGpuFrameMillis() {
+        return lastFrame.gpuFrameNanos() / 1_000_000.0;
+    }
+
+    @Override
+    public double getFrameTimeP50Millis() {
+        return getFrameTimePercentileMillis(50);
+    }
+
+    @Override
+    public double getFrameTimeP90Millis() {
+        return getFrameTimePercentileMillis(90);
+    }
+
+    @Override
+    public double getFrameTimeP99Millis() {
+        return getFrameTimePercentileMillis(99);
+    }
+
+    @Override
+    public double getFrameTimeMaxMillis() {
+        return getFrameTimePercentileMillis(100);
+    }
+}
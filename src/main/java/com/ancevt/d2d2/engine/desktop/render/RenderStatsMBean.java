@@ -0,0 +1,53 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+/**
+ * JMX view of {@link RenderStats}. Counters refer to the last completed frame unless named "total".
+ */
+public interface RenderStatsMBean {
+
+    long getFrameIndex();
+
+    int getDrawCalls();
+
+    int getFlushesByTexture();
+
+    int getFlushesByShader();
+
+    int getFlushesByBlend();
+
+    int getFlushesByBatchFull();
+
+    int getQuads();
+
+    int getVertices();
+
+    long getBytesStreamed();
+
+    int getShaderSwitches();
+
+    int getTextureBinds();
+
+    double getCollectMillis();
+
+    double getVertexMillis();
+
+    double getSubmitMillis();
+
+    double getSwapMillis();
+
+    double getGpuFrameMillis();
+
+    double getFrameTimeP50Millis();
+
+    double getFrameTimeP90Millis();
+
+    double getFrameTimeP99Millis();
+
+    double getFrameTimeMaxMillis();
+
+    long getTotalDrawCalls();
+
+    long getTotalBytesStreamed();
+
+    void resetHistogram();
+}
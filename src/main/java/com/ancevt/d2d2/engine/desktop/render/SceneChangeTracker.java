@@ -0,0 +1,54 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.scene.Group;
+import com.ancevt.d2d2.scene.Node;
+import com.ancevt.d2d2.scene.Stage;
+
+import java.util.List;
+
+/**
+ * Decides whether the stage needs redrawing in render-on-change mode.
+ * <p>
+ * Nodes do not report their own mutations, so instead every property the DrawInfos read is folded into a
+ * 64-bit fingerprint ({@link NodeSignature}) by a walk of the tree. This costs far less than a frame (no
+ * DrawInfos, no vertices, no upload, no swap). Changes it cannot see go through {@link #invalidate()}.
+ */
+class SceneChangeTracker {
+
+    private long lastFingerprint;
+    private boolean invalid = true;
+
+    void invalidate() {
+        invalid = true;
+    }
+
+    /**
+     * @return true if the stage differs from the last call (or was invalidated); remembers the new state
+     */
+    boolean hasChanged(Stage stage) {
+        long fingerprint = fingerprint(stage);
+        boolean changed = invalid || fingerprint != lastFingerprint;
+        lastFingerprint = fingerprint;
+        invalid = false;
+        return changed;
+    }
+
+    private long fingerprint(Stage stage) {
+        long h = NodeSignature.FNV_OFFSET;
+        h = NodeSignature.mixColor(h, stage.getBackgroundColor());
+        return mixTree(h, stage);
+    }
+
+    private long mixTree(long h, Node node) {
+        h = NodeSignature.mixNode(h, node);
+
+        if (node instanceof Group group) {
+            List<Node> children = group.children().toList();
+            h = NodeSignature.mix(h, children.size());
+            for (Node child : children) {
+                h = mixTree(h, child);
+            }
+        }
+        return h;
+    }
+}
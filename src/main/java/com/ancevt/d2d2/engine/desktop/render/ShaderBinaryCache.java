@@ -0,0 +1,174 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import lombok.Getter;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.opengl.ARBGetProgramBinary;
+import org.lwjgl.opengl.GL;
+import org.lwjgl.opengl.GL11;
+import org.lwjgl.opengl.GLCapabilities;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.IntBuffer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+import static com.ancevt.d2d2.D2D2.log;
+import static org.lwjgl.opengl.GL20.*;
+
+/**
+ * On-disk cache of linked program binaries ({@code glGetProgramBinary}/{@code glProgramBinary}).
+ * Entries are keyed by a hash of both shader sources and the driver vendor/renderer/version strings,
+ * so a driver update simply misses. Binaries the driver rejects are deleted and the caller falls back
+ * to compiling from source.
+ */
+public final class ShaderBinaryCache {
+
+    public static final String PROPERTY_ENABLED = "d2d2.shader.cache.enabled";
+    public static final String PROPERTY_DIR = "d2d2.shader.cache.dir";
+
+    private static final int MAGIC = 0x44325342; // "D2SB"
+    private static final int FILE_VERSION = 1;
+    private static final int HEADER_BYTES = 4 * Integer.BYTES;
+
+    private static Boolean available;
+    private static String driverKey;
+
+    @Getter
+    private static long hits;
+    @Getter
+    private static long misses;
+    @Getter
+    private static long rejected;
+
+    private ShaderBinaryCache() {
+    }
+
+    public static boolean isAvailable() {
+        if (available == null) {
+            boolean enabled = !"false".equalsIgnoreCase(System.getProperty(PROPERTY_ENABLED));
+            GLCapabilities caps = GL.getCapabilities();
+            available = enabled
+                    && (caps.OpenGL41 || caps.GL_ARB_get_program_binary)
+                    && GL11.glGetInteger(ARBGetProgramBinary.GL_NUM_PROGRAM_BINARY_FORMATS) > 0;
+        }
+        return available;
+    }
+
+    public static Path getDirectory() {
+        String dir = System.getProperty(PROPERTY_DIR);
+        return dir != null ? Path.of(dir) : Path.of(System.getProperty("java.io.tmpdir"), "d2d2-shader-cache");
+    }
+
+    /**
+     * @return a linked program restored from the cache, or 0 if there is no usable entry
+     */
+    public static int load(String vertexSource, String fragmentSource) {
+        if (!isAvailable()) return 0;
+
+        Path file = fileFor(vertexSource, fragmentSource);
+        if (!Files.isRegularFile(file)) {
+            misses++;
+            return 0;
+        }
+
+        try {
+            ByteBuffer data = ByteBuffer.wrap(Files.readAllBytes(file));
+            if (data.remaining() < HEADER_BYTES || data.getInt() != MAGIC || data.getInt() != FILE_VERSION) {
+                return reject(file);
+            }
+            int format = data.getInt();
+            int length = data.getInt();
+            if (length <= 0 || length != data.remaining()) {
+                return reject(file);
+            }
+
+            ByteBuffer binary = BufferUtils.createByteBuffer(length);
+            binary.put(data).flip();
+
+            int programId = glCreateProgram();
+            ARBGetProgramBinary.glProgramBinary(programId, format, binary);
+            if (glGetProgrami(programId, GL_LINK_STATUS) == GL11.GL_FALSE) {
+                glDeleteProgram(programId);
+                return reject(file);
+            }
+
+            hits++;
+            return programId;
+        } catch (IOException e) {
+            log.error(ShaderBinaryCache.class, "Could not read program binary " + file, e);
+            misses++;
+            return 0;
+        }
+    }
+
+    /**
+     * Must be called before {@code glLinkProgram} so the driver keeps the binary retrievable.
+     */
+    public static void prepareForLink(int programId) {
+        if (!isAvailable()) return;
+        ARBGetProgramBinary.glProgramParameteri(programId, ARBGetProgramBinary.GL_PROGRAM_BINARY_RETRIEVABLE_HINT, GL11.GL_TRUE);
+    }
+
+    public static void store(int programId, String vertexSource, String fragmentSource) {
+        if (!isAvailable()) return;
+
+        int length = glGetProgrami(programId, ARBGetProgramBinary.GL_PROGRAM_BINARY_LENGTH);
+        if (length <= 0) return;
+
+        ByteBuffer binary = BufferUtils.createByteBuffer(length);
+        IntBuffer lengthOut = BufferUtils.createIntBuffer(1);
+        IntBuffer formatOut = BufferUtils.createIntBuffer(1);
+        ARBGetProgramBinary.glGetProgramBinary(programId, lengthOut, formatOut, binary);
+
+        int written = lengthOut.get(0);
+        if (written <= 0) return;
+        binary.limit(written);
+
+        ByteBuffer data = ByteBuffer.allocate(HEADER_BYTES + written);
+        data.putInt(MAGIC).putInt(FILE_VERSION).putInt(formatOut.get(0)).putInt(written).put(binary);
+
+        Path file = fileFor(vertexSource, fragmentSource);
+        try {
+            Files.createDirectories(file.getParent());
+            Path tmp = Files.createTempFile(file.getParent(), "program", ".tmp");
+            Files.write(tmp, data.array());
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException e) {
+            log.error(ShaderBinaryCache.class, "Could not write program binary " + file, e);
+        }
+    }
+
+    private static int reject(Path file) {
+        rejected++;
+        try {
+            Files.deleteIfExists(file);
+        } catch (IOException ignored) {
+        }
+        return 0;
+    }
+
+    private static Path fileFor(String vertexSource, String fragmentSource) {
+        if (driverKey == null) {
+            driverKey = GL11.glGetString(GL11.GL_VENDOR) + '\0'
+                    + GL11.glGetString(GL11.GL_RENDERER) + '\0'
+                    + GL11.glGetString(GL11.GL_VERSION);
+        }
+        try {
+            MessageDigest digest = MessageDigest.getInstance("SHA-256");
+            digest.update(driverKey.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(vertexSource.getBytes(StandardCharsets.UTF_8));
+            digest.update((byte) 0);
+            digest.update(fragmentSource.getBytes(StandardCharsets.UTF_8));
+            return getDirectory().resolve(HexFormat.of().formatHex(digest.digest()) + ".bin");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+}
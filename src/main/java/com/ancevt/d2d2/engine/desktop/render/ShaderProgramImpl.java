@@ -1,20 +1,42 @@
 package com.ancevt.d2d2.engine.desktop.render;
 
+import com.ancevt.d2d2.engine.desktop.jfr.ShaderCompileEvent;
 import com.ancevt.d2d2.scene.shader.ShaderProgram;
-import lombok.AllArgsConstructor;
 import lombok.Getter;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.regex.Pattern;
 
 import static org.lwjgl.opengl.GL20.*;
 
 public class ShaderProgramImpl implements ShaderProgram {
 
+    private static final int INITIAL_CAPACITY = 8;
+
+    private static final Pattern COMMENTS = Pattern.compile("//[^\n]*|/\\*.*?\\*/", Pattern.DOTALL);
+    private static final Pattern FRAME_BLOCK = Pattern.compile("uniform\\s+" + GlContextManager.FRAME_UNIFORM_BLOCK_NAME + "\\s*\\{[^}]*}");
+    private static final Pattern TIME = Pattern.compile("\\buTime\\b");
+
+    // Слинкованная программа общая для copy(); у каждой копии своё состояние униформ
+    private final LinkedProgram linked;
     private final int programId;
-    private final Map<String, Integer> uniformLocations = new HashMap<>();
+    private boolean destroyed;
 
-    final Map<String, Value> values = new HashMap<>();
+    // Униформы хранятся в плоских массивах, доступ по int-хэндлу без аллокаций.
+    // Строковый API резолвит хэндл один раз через handles.
+    private final Map<String, Integer> handles = new HashMap<>();
+    private String[] names = new String[INITIAL_CAPACITY];
+    private int[] locations = new int[INITIAL_CAPACITY];
+    private Type[] types = new Type[INITIAL_CAPACITY];
+    private float[] data = new float[INITIAL_CAPACITY * 4];
+    private boolean[] dirty = new boolean[INITIAL_CAPACITY];
+    private int count;
+    private int dirtyCount;
 
     @Getter
     private final String vertexSource;
@@ -24,21 +46,68 @@ public class ShaderProgramImpl implements ShaderProgram {
     public ShaderProgramImpl(String vertexSource, String fragmentSource) {
         this.vertexSource = vertexSource;
         this.fragmentSource = fragmentSource;
+
+        ShaderCompileEvent event = new ShaderCompileEvent();
+        event.begin();
+
+        int id = ShaderBinaryCache.load(vertexSource, fragmentSource);
+        boolean cacheHit = id != 0;
+        if (!cacheHit) {
+            id = compileAndLink(vertexSource, fragmentSource);
+            ShaderBinaryCache.store(id, vertexSource, fragmentSource);
+        }
+
+        if (event.shouldCommit()) {
+            event.programId = id;
+            event.cacheHit = cacheHit;
+            event.sourceLength = vertexSource.length() + fragmentSource.length();
+            event.commit();
+        }
+
+        linked = new LinkedProgram(id, vertexSource, fragmentSource);
+        programId = id;
+
+        int uTexture = glGetUniformLocation(programId, "uTexture");
+        if (uTexture != -1) {
+            setUniform(uniformHandle("uTexture"), 0); // GL_TEXTURE0
+        }
+    }
+
+    private ShaderProgramImpl(ShaderProgramImpl source) {
+        vertexSource = source.vertexSource;
+        fragmentSource = source.fragmentSource;
+        linked = source.linked;
+        linked.refCount++;
+        programId = linked.programId;
+
+        handles.putAll(source.handles);
+        names = source.names.clone();
+        locations = source.locations.clone();
+        types = source.types.clone();
+        data = source.data.clone();
+        dirty = source.dirty.clone();
+        count = source.count;
+        dirtyCount = source.dirtyCount;
+    }
+
+    private int compileAndLink(String vertexSource, String fragmentSource) {
         int vertexShader = compileShader(vertexSource, GL_VERTEX_SHADER);
         int fragmentShader = compileShader(fragmentSource, GL_FRAGMENT_SHADER);
 
-        programId = glCreateProgram();
+        int id = glCreateProgram();
 
-        glAttachShader(programId, vertexShader);
-        glAttachShader(programId, fragmentShader);
-        glLinkProgram(programId);
+        glAttachShader(id, vertexShader);
+        glAttachShader(id, fragmentShader);
+        ShaderBinaryCache.prepareForLink(id);
+        glLinkProgram(id);
 
-        if (glGetProgrami(programId, GL_LINK_STATUS) == 0) {
-            throw new RuntimeException("Shader link error: " + glGetProgramInfoLog(programId));
+        if (glGetProgrami(id, GL_LINK_STATUS) == 0) {
+            throw new RuntimeException("Shader link error: " + glGetProgramInfoLog(id));
         }
 
         glDeleteShader(vertexShader);
         glDeleteShader(fragmentShader);
+        return id;
     }
 
     private int compileShader(String source, int type) {
@@ -56,11 +125,11 @@ public class ShaderProgramImpl implements ShaderProgram {
     }
 
     public void bind() {
-        glUseProgram(programId);
+        GlContextManager.useProgram(programId);
     }
 
     public void unbind() {
-        glUseProgram(0);
+        GlContextManager.useProgram(0);
     }
 
     @Override
@@ -70,76 +139,247 @@ public class ShaderProgramImpl implements ShaderProgram {
 
     @Override
     public int getUniformLocation(String name) {
-        return uniformLocations.computeIfAbsent(name, n -> {
-            int location = glGetUniformLocation(programId, n);
-            if (location == -1) System.err.println("⚠️ Uniform not found: " + n);
-            return location;
-        });
+        return locations[uniformHandle(name)];
+    }
+
+    /**
+     * Resolves (once) an int handle for the uniform. Handle-based setters do no lookups and no allocations.
+     */
+    public int uniformHandle(String name) {
+        Integer handle = handles.get(name);
+        if (handle != null) return handle;
+
+        int location = glGetUniformLocation(programId, name);
+        if (location == -1) System.err.println("⚠️ Uniform not found: " + name);
+
+        if (count == names.length) grow();
+        names[count] = name;
+        locations[count] = location;
+        handles.put(name, count);
+        return count++;
+    }
+
+    private void grow() {
+        int capacity = names.length * 2;
+        names = Arrays.copyOf(names, capacity);
+        locations = Arrays.copyOf(locations, capacity);
+        types = Arrays.copyOf(types, capacity);
+        data = Arrays.copyOf(data, capacity * 4);
+        dirty = Arrays.copyOf(dirty, capacity);
     }
 
     // === Uniform Setters ===
     @Override
     public void setUniform(String name, float value) {
-        values.put(name, new Value(value, 0f, 0f, 0f, Type.FLOAT1));
+        setUniform(uniformHandle(name), value);
     }
 
     @Override
     public void setUniform(String name, int value) {
-        values.put(name, new Value(value, 0f, 0f, 0f, Type.INT1));
+        setUniform(uniformHandle(name), value);
     }
 
     @Override
     public void setUniform(String name, float x, float y) {
-        values.put(name, new Value(x, y, 0f, 0f, Type.FLOAT2));
+        setUniform(uniformHandle(name), x, y);
     }
 
     @Override
     public void setUniform(String name, float x, float y, float z) {
-        values.put(name, new Value(x, y, z, 0f, Type.FLOAT3));
+        setUniform(uniformHandle(name), x, y, z);
     }
 
     @Override
     public void setUniform(String name, float x, float y, float z, float w) {
-        values.put(name, new Value(x, y, z, w, Type.FLOAT4));
+        setUniform(uniformHandle(name), x, y, z, w);
+    }
+
+    public void setUniform(int handle, float value) {
+        set(handle, Type.FLOAT1, value, 0f, 0f, 0f);
+    }
+
+    public void setUniform(int handle, int value) {
+        set(handle, Type.INT1, value, 0f, 0f, 0f);
+    }
+
+    public void setUniform(int handle, float x, float y) {
+        set(handle, Type.FLOAT2, x, y, 0f, 0f);
+    }
+
+    public void setUniform(int handle, float x, float y, float z) {
+        set(handle, Type.FLOAT3, x, y, z, 0f);
+    }
+
+    public void setUniform(int handle, float x, float y, float z, float w) {
+        set(handle, Type.FLOAT4, x, y, z, w);
+    }
+
+    private void set(int handle, Type type, float x, float y, float z, float w) {
+        int i = handle * 4;
+        if (types[handle] == type && data[i] == x && data[i + 1] == y && data[i + 2] == z && data[i + 3] == w) {
+            return;
+        }
+        types[handle] = type;
+        data[i] = x;
+        data[i + 1] = y;
+        data[i + 2] = z;
+        data[i + 3] = w;
+        if (!dirty[handle]) {
+            dirty[handle] = true;
+            dirtyCount++;
+        }
     }
 
     enum Type {
         FLOAT1, INT1, FLOAT2, FLOAT3, FLOAT4
     }
 
+    /**
+     * Writes the current value of every uniform set so far, for {@link DrawStreamRecorder}.
+     */
+    void writeUniforms(DataOutput out) throws IOException {
+        int set = 0;
+        for (int handle = 0; handle < count; handle++) {
+            if (types[handle] != null) set++;
+        }
+        out.writeShort(set);
+        for (int handle = 0; handle < count; handle++) {
+            if (types[handle] == null) continue;
+            out.writeUTF(names[handle]);
+            out.writeByte(types[handle].ordinal());
+            for (int i = handle * 4; i < handle * 4 + 4; i++) out.writeFloat(data[i]);
+        }
+    }
+
+    /**
+     * Counterpart of {@link #writeUniforms(DataOutput)}; changed values are uploaded by the next {@link #uploadUniforms()}.
+     */
+    void readUniforms(DataInput in) throws IOException {
+        int set = in.readUnsignedShort();
+        for (int n = 0; n < set; n++) {
+            int handle = uniformHandle(in.readUTF());
+            Type type = Type.values()[in.readByte()];
+            set(handle, type, in.readFloat(), in.readFloat(), in.readFloat(), in.readFloat());
+        }
+    }
+
+    /**
+     * Uploads only the uniforms changed since the last upload. The program must be bound.
+     */
     @Override
     public void uploadUniforms() {
-        for (Map.Entry<String, Value> entry : values.entrySet()) {
-            final String name = entry.getKey();
-            final Value val = entry.getValue();
-            final int location = getUniformLocation(name);
-
-            switch (val.type) {
-                case FLOAT1 -> glUniform1f(location, val.x);
-                case INT1 -> glUniform1i(location, (int) val.x);
-                case FLOAT2 -> glUniform2f(location, val.x, val.y);
-                case FLOAT3 -> glUniform3f(location, val.x, val.y, val.z);
-                case FLOAT4 -> glUniform4f(location, val.x, val.y, val.z, val.w);
+        // Значения униформ живут в GL-программе: если её последней грузила другая копия, грузим всё своё
+        if (linked.lastUploader != this) {
+            markAllDirty();
+            linked.lastUploader = this;
+        }
+
+        if (dirtyCount == 0) return;
+
+        for (int handle = 0; handle < count; handle++) {
+            if (!dirty[handle]) continue;
+            dirty[handle] = false;
+
+            final int location = locations[handle];
+            if (location == -1) continue;
+
+            final int i = handle * 4;
+            switch (types[handle]) {
+                case FLOAT1 -> glUniform1f(location, data[i]);
+                case INT1 -> glUniform1i(location, (int) data[i]);
+                case FLOAT2 -> glUniform2f(location, data[i], data[i + 1]);
+                case FLOAT3 -> glUniform3f(location, data[i], data[i + 1], data[i + 2]);
+                case FLOAT4 -> glUniform4f(location, data[i], data[i + 1], data[i + 2], data[i + 3]);
             }
         }
+        dirtyCount = 0;
+    }
+
+    boolean hasDirtyUniforms() {
+        return dirtyCount > 0;
+    }
+
+    /**
+     * Whether the program reads {@code uTime}, so its output changes every frame even with unchanged uniforms.
+     */
+    boolean usesFrameTime() {
+        return linked.usesFrameTime;
+    }
+
+    private void markAllDirty() {
+        dirtyCount = 0;
+        for (int handle = 0; handle < count; handle++) {
+            dirty[handle] = types[handle] != null;
+            if (dirty[handle]) dirtyCount++;
+        }
+    }
+
+    /**
+     * Programs declaring the {@code D2D2Frame} block read projection and time from the shared UBO.
+     * Older programs with plain {@code uProjection}/{@code uTime} uniforms get them uploaded here,
+     * at most once per projection change / frame. The program must be bound.
+     */
+    void applyFrameGlobals(GlContextManager glContextManager) {
+        LinkedProgram p = linked;
+        if (p.usesFrameBlock) return;
+
+        if (p.uProjectionLocation != -1 && p.uploadedProjectionVersion != glContextManager.getProjectionVersion()) {
+            glUniformMatrix4fv(p.uProjectionLocation, false, glContextManager.getProjectionMatrix());
+            p.uploadedProjectionVersion = glContextManager.getProjectionVersion();
+        }
+
+        if (p.uTimeLocation != -1 && p.uploadedFrameIndex != glContextManager.getFrameIndex()) {
+            glUniform1f(p.uTimeLocation, glContextManager.getFrameTime());
+            p.uploadedFrameIndex = glContextManager.getFrameIndex();
+        }
     }
 
     @Override
     public void destroy() {
+        if (destroyed) return;
+        destroyed = true;
+        if (linked.lastUploader == this) linked.lastUploader = null;
+        if (--linked.refCount > 0) return;
+
+        if (GlContextManager.getBoundProgram() == programId) GlContextManager.useProgram(0);
         glDeleteProgram(programId);
     }
 
+    /**
+     * Returns a program sharing the same linked GL program but with independent uniform values.
+     */
     @Override
     public ShaderProgram copy() {
-        return new ShaderProgramImpl(getVertexSource(), getFragmentSource());
+        return new ShaderProgramImpl(this);
     }
 
-    @AllArgsConstructor
-    static class Value {
-        float x;
-        float y;
-        float z;
-        float w;
-        Type type;
+    private static final class LinkedProgram {
+        final int programId;
+        final boolean usesFrameBlock;
+        final int uProjectionLocation;
+        final int uTimeLocation;
+        final boolean usesFrameTime;
+
+        int refCount = 1;
+        ShaderProgramImpl lastUploader;
+        int uploadedProjectionVersion = -1;
+        long uploadedFrameIndex = -1;
+
+        LinkedProgram(int programId, String vertexSource, String fragmentSource) {
+            this.programId = programId;
+            usesFrameBlock = GlContextManager.bindFrameUniformBlock(programId);
+            uProjectionLocation = usesFrameBlock ? -1 : glGetUniformLocation(programId, "uProjection");
+            uTimeLocation = usesFrameBlock ? -1 : glGetUniformLocation(programId, "uTime");
+            // Неиспользуемую обычную униформу линкер выкидывает, а члены std140-блока активны всегда,
+            // поэтому для блока смотрим, читает ли uTime сам код шейдеров
+            usesFrameTime = usesFrameBlock
+                    ? readsTime(vertexSource) || readsTime(fragmentSource)
+                    : uTimeLocation != -1;
+        }
+
+        private static boolean readsTime(String source) {
+            String code = FRAME_BLOCK.matcher(COMMENTS.matcher(source).replaceAll(" ")).replaceAll(" ");
+            return TIME.matcher(code).find();
+        }
     }
 }
@@ -2,12 +2,26 @@ package com.ancevt.d2d2.engine.desktop.render;
 
 public class ShaderSources {
 
+    /**
+     * Shared per-frame globals. Custom shaders may declare this block instead of plain
+     * {@code uProjection}/{@code uTime} uniforms; the engine then updates them once per frame for all programs.
+     */
+    public static final String FRAME_UNIFORMS_BLOCK = """
+            layout(std140) uniform D2D2Frame {
+                mat4 uProjection;
+                float uTime;
+            };
+            """;
+
     public static final String VERTEX_SHADER = """
             #version 330 core
             layout(location = 0) in vec2 aPos;
             layout(location = 1) in vec2 aTexCoord;
             layout(location = 2) in vec4 aColor;
-            uniform mat4 uProjection;
+            layout(std140) uniform D2D2Frame {
+                mat4 uProjection;
+                float uTime;
+            };
             out vec2 vTexCoord;
             out vec4 vColor;
             void main() {
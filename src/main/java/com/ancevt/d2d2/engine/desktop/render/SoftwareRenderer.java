@@ -0,0 +1,501 @@
+package com.ancevt.d2d2.engine.desktop.render;
+
+import com.ancevt.d2d2.D2D2;
+import com.ancevt.d2d2.engine.desktop.DesktopTextureManager;
+import com.ancevt.d2d2.engine.desktop.node.BitmapCanvasGpu;
+import com.ancevt.d2d2.event.CommonEvent;
+import com.ancevt.d2d2.scene.Color;
+import com.ancevt.d2d2.scene.Group;
+import com.ancevt.d2d2.scene.Node;
+import com.ancevt.d2d2.scene.Renderer;
+import com.ancevt.d2d2.scene.Sprite;
+import com.ancevt.d2d2.scene.Stage;
+import com.ancevt.d2d2.scene.shape.FreeShape;
+import com.ancevt.d2d2.scene.shape.LineBatch;
+import com.ancevt.d2d2.scene.shape.RectangleShape;
+import com.ancevt.d2d2.scene.text.BitmapText;
+import lombok.Getter;
+import lombok.Setter;
+import org.lwjgl.BufferUtils;
+import org.lwjgl.system.MemoryUtil;
+
+import java.awt.image.BufferedImage;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.FloatBuffer;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+
+/**
+ * CPU rasteriser for render workers without GL (thumbnails, golden images, CI).
+ * <p>
+ * The stage is walked into the same {@link DrawInfo} stream as {@link DesktopRenderer}. Generated quads
+ * are binned into {@value #TILE_SIZE}x{@value #TILE_SIZE} tiles and the tiles are rasterised in parallel
+ * into an off-heap RGBA buffer. Sampling, blending and the fill rule follow the GL path: nearest + repeat
+ * for loaded textures, nearest + clamp for canvases, SRC_ALPHA/ONE_MINUS_SRC_ALPHA rounded to 8 bits after
+ * every draw, top-left rule. Custom shaders are not supported and are ignored.
+ * <p>
+ * Textures have to be loaded with {@link DesktopTextureManager#setSoftwareMode(boolean)} enabled.
+ * Rows are stored bottom-up like a GL readback, so frames can be handed to any {@link FrameCaptureSink}.
+ */
+public class SoftwareRenderer implements Renderer {
+
+    public static final int TILE_SIZE = 64;
+
+    private static final int FLOATS_PER_VERTEX = 8; // x, y, u, v, r, g, b, a
+    private static final int FLOATS_PER_QUAD = 4 * FLOATS_PER_VERTEX;
+
+    private final Stage stage;
+    private final DesktopTextureManager textureManager;
+    private final ForkJoinPool pool;
+
+    @Getter
+    private final int threads;
+
+    @Getter
+    @Setter
+    private boolean running = true;
+
+    @Getter
+    @Setter
+    private int frameRate = 60;
+
+    @Getter
+    private int actualFps;
+
+    @Getter
+    private int width;
+    @Getter
+    private int height;
+
+    private ByteBuffer pixels;
+
+    @Getter
+    private long frameIndex;
+
+    // Вершины всех квадов кадра в порядке отрисовки
+    private final FloatBuffer scratch = BufferUtils.createFloatBuffer(DesktopRenderer.BATCH_SIZE * FLOATS_PER_QUAD);
+    private float[] quads = new float[1024 * FLOATS_PER_QUAD];
+    private Sampler[] quadSamplers = new Sampler[1024];
+    private int quadCount;
+
+    private int tilesX;
+    private int tilesY;
+    private int[][] tileQuads = new int[0][];
+    private int[] tileQuadCounts = new int[0];
+
+    private int clearColor;
+
+    private final Map<Integer, ImageSampler> textureSamplers = new HashMap<>();
+
+    private final ThreadLocal<int[]> tileBuffers = ThreadLocal.withInitial(() -> new int[TILE_SIZE * TILE_SIZE]);
+
+    private long fpsWindowStart = System.nanoTime();
+    private int fpsFrames;
+
+    public SoftwareRenderer(Stage stage, int width, int height) {
+        this(stage, (DesktopTextureManager) D2D2.getTextureManager(), width, height, Runtime.getRuntime().availableProcessors());
+    }
+
+    public SoftwareRenderer(Stage stage, DesktopTextureManager textureManager, int width, int height, int threads) {
+        if (threads < 1) throw new IllegalArgumentException("threads must be positive: " + threads);
+        this.stage = stage;
+        this.textureManager = textureManager;
+        this.threads = threads;
+        this.pool = new ForkJoinPool(threads);
+
+        GlContextManager.useWhiteTexturePlaceholder();
+        allocate(width, height);
+    }
+
+    @Override
+    public void init(long windowId) {
+        // GL нет — инициализировать нечего
+    }
+
+    @Override
+    public void reshape() {
+        stage.dispatchEvent(CommonEvent.Resize.create(width, height));
+        stage.setSize(width, height);
+    }
+
+    public void setSize(int width, int height) {
+        if (width == this.width && height == this.height) return;
+        allocate(width, height);
+        reshape();
+    }
+
+    private void allocate(int width, int height) {
+        if (width <= 0 || height <= 0) throw new IllegalArgumentException("bad size: " + width + "x" + height);
+        if (pixels != null) MemoryUtil.memFree(pixels);
+
+        this.width = width;
+        this.height = height;
+        // Порядок байт R, G, B, A при putInt
+        pixels = MemoryUtil.memAlloc(width * height * 4).order(ByteOrder.BIG_ENDIAN);
+
+        tilesX = (width + TILE_SIZE - 1) / TILE_SIZE;
+        tilesY = (height + TILE_SIZE - 1) / TILE_SIZE;
+        tileQuads = new int[tilesX * tilesY][];
+        for (int i = 0; i < tileQuads.length; i++) tileQuads[i] = new int[64];
+        tileQuadCounts = new int[tileQuads.length];
+    }
+
+    /**
+     * Pixels of the last rendered frame: tightly packed RGBA8, bottom row first. Valid until the next
+     * {@link #setSize} or {@link #dispose()}.
+     */
+    public ByteBuffer getPixels() {
+        return pixels.duplicate().clear();
+    }
+
+    @Override
+    public void renderFrame() {
+        quadCount = 0;
+        collectNodes(stage, 1f, 0f, 0f, 0f, 1f, 0f, 1f);
+
+        Color bg = stage.getBackgroundColor();
+        clearColor = bg == null ? 0 : (bg.getR() << 24) | (bg.getG() << 16) | (bg.getB() << 8) | 0xFF;
+
+        binQuads();
+        pool.submit(() -> IntStream.range(0, tileQuads.length).parallel().forEach(this::rasterizeTile)).join();
+
+        frameIndex++;
+        countFps();
+    }
+
+    public void writeTo(FrameCaptureSink sink) throws IOException {
+        sink.accept(new CapturedFrame(frameIndex, width, height, System.nanoTime(), getPixels()));
+    }
+
+    public void dispose() {
+        pool.shutdown();
+        if (pixels != null) {
+            MemoryUtil.memFree(pixels);
+            pixels = null;
+        }
+        textureSamplers.clear();
+    }
+
+    private void countFps() {
+        fpsFrames++;
+        long now = System.nanoTime();
+        if (now - fpsWindowStart >= 1_000_000_000L) {
+            actualFps = fpsFrames;
+            fpsFrames = 0;
+            fpsWindowStart = now;
+        }
+    }
+
+    // === Draw stream ===
+
+    private void collectNodes(Node node, float a, float b, float c, float d, float e, float f, float alpha) {
+        float x = node.getX(), y = node.getY();
+        float scaleX = node.getScaleX(), scaleY = node.getScaleY();
+        float rad = (float) Math.toRadians(node.getRotation());
+        float cos = (float) Math.cos(rad), sin = (float) Math.sin(rad);
+
+        float a2 = cos * scaleX, b2 = -sin * scaleY, d2 = sin * scaleX, e2 = cos * scaleY;
+        float c2 = x, f2 = y;
+
+        float na = a * a2 + b * d2;
+        float nb = a * b2 + b * e2;
+        float nc = a * c2 + b * f2 + c;
+        float nd = d * a2 + e * d2;
+        float ne = d * b2 + e * e2;
+        float nf = d * c2 + e * f2 + f;
+
+        float newAlpha = alpha * node.getAlpha();
+
+        if (node instanceof Sprite sprite) {
+            emit(new SpriteDrawInfo(sprite, na, nb, nc, nd, ne, nf, newAlpha));
+        } else if (node instanceof BitmapText btx) {
+            if (btx.isCacheAsSprite()) {
+                emit(new SpriteDrawInfo(btx.cachedSprite(), na, nb, nc, nd, ne, nf, newAlpha));
+            } else {
+                emit(new BitmapTextDrawInfo(btx, na, nb, nc, nd, ne, nf, newAlpha));
+            }
+        } else if (node instanceof RectangleShape rect) {
+            emit(new RectangleShapeDrawInfo(rect, na, nb, nc, nd, ne, nf, newAlpha));
+        } else if (node instanceof FreeShape freeShape) {
+            emit(new FreeShapeDrawInfo(freeShape, na, nb, nc, nd, ne, nf, newAlpha));
+        } else if (node instanceof LineBatch lineBatch) {
+            emit(new LineBatchDrawInfo(lineBatch, na, nb, nc, nd, ne, nf, newAlpha));
+        } else if (node instanceof BitmapCanvasGpu canvasGPU) {
+            emit(new BitmapCanvasGpuDrawInfo(canvasGPU, na, nb, nc, nd, ne, nf, newAlpha));
+        }
+
+        if (node instanceof Group group) {
+            for (Node child : group.children().toList()) {
+                collectNodes(child, na, nb, nc, nd, ne, nf, newAlpha);
+            }
+        }
+    }
+
+    private void emit(DrawInfo info) {
+        scratch.clear();
+        int count = info.render(scratch, null);
+        if (count <= 0) return;
+
+        Sampler sampler = info instanceof BitmapCanvasGpuDrawInfo canvasInfo
+                ? new CanvasSampler(canvasInfo.getCanvas())
+                : samplerFor(info.getTextureId());
+
+        if (quadCount + count > quadSamplers.length) {
+            int capacity = Math.max(quadSamplers.length * 2, quadCount + count);
+            quads = Arrays.copyOf(quads, capacity * FLOATS_PER_QUAD);
+            quadSamplers = Arrays.copyOf(quadSamplers, capacity);
+        }
+
+        scratch.flip();
+        scratch.get(quads, quadCount * FLOATS_PER_QUAD, count * FLOATS_PER_QUAD);
+        Arrays.fill(quadSamplers, quadCount, quadCount + count, sampler);
+        quadCount += count;
+    }
+
+    private Sampler samplerFor(int textureId) {
+        if (textureId == GlContextManager.getWhiteTexture().getId()) return WHITE;
+
+        BufferedImage image = textureManager.getBufferedImageMap().get(textureId);
+        if (image == null) {
+            textureSamplers.remove(textureId);
+            return TRANSPARENT;
+        }
+
+        ImageSampler sampler = textureSamplers.get(textureId);
+        if (sampler == null || sampler.image != image) {
+            sampler = new ImageSampler(image);
+            textureSamplers.put(textureId, sampler);
+        }
+        return sampler;
+    }
+
+    // === Binning ===
+
+    private void binQuads() {
+        Arrays.fill(tileQuadCounts, 0);
+
+        for (int q = 0; q < quadCount; q++) {
+            int base = q * FLOATS_PER_QUAD;
+            float minX = Float.POSITIVE_INFINITY, minY = Float.POSITIVE_INFINITY;
+            float maxX = Float.NEGATIVE_INFINITY, maxY = Float.NEGATIVE_INFINITY;
+            for (int v = 0; v < 4; v++) {
+                float x = quads[base + v * FLOATS_PER_VERTEX];
+                float y = quads[base + v * FLOATS_PER_VERTEX + 1];
+                minX = Math.min(minX, x);
+                maxX = Math.max(maxX, x);
+                minY = Math.min(minY, y);
+                maxY = Math.max(maxY, y);
+            }
+            // NaN тоже отбрасывается этими сравнениями
+            if (!(maxX > 0 && maxY > 0 && minX < width && minY < height)) continue;
+
+            int tx0 = Math.max(0, (int) minX / TILE_SIZE);
+            int ty0 = Math.max(0, (int) minY / TILE_SIZE);
+            int tx1 = Math.min(tilesX - 1, (int) maxX / TILE_SIZE);
+            int ty1 = Math.min(tilesY - 1, (int) maxY / TILE_SIZE);
+
+            for (int ty = ty0; ty <= ty1; ty++) {
+                for (int tx = tx0; tx <= tx1; tx++) {
+                    int tile = ty * tilesX + tx;
+                    int n = tileQuadCounts[tile];
+                    if (n == tileQuads[tile].length) tileQuads[tile] = Arrays.copyOf(tileQuads[tile], n * 2);
+                    tileQuads[tile][n] = q;
+                    tileQuadCounts[tile] = n + 1;
+                }
+            }
+        }
+    }
+
+    // === Rasterisation ===
+
+    private void rasterizeTile(int tile) {
+        int[] buffer = tileBuffers.get();
+        int x0 = (tile % tilesX) * TILE_SIZE;
+        int y0 = (tile / tilesX) * TILE_SIZE;
+        int tw = Math.min(TILE_SIZE, width - x0);
+        int th = Math.min(TILE_SIZE, height - y0);
+
+        Arrays.fill(buffer, clearColor);
+
+        int[] list = tileQuads[tile];
+        int count = tileQuadCounts[tile];
+        for (int i = 0; i < count; i++) {
+            int q = list[i];
+            int base = q * FLOATS_PER_QUAD;
+            Sampler sampler = quadSamplers[q];
+            // Тот же порядок индексов, что и в EBO: 0,1,2, 2,3,0
+            rasterizeTriangle(base, 0, 1, 2, sampler, buffer, x0, y0, tw, th);
+            rasterizeTriangle(base, 2, 3, 0, sampler, buffer, x0, y0, tw, th);
+        }
+
+        for (int y = 0; y < th; y++) {
+            int row = (height - 1 - (y0 + y)) * width + x0;
+            for (int x = 0; x < tw; x++) {
+                pixels.putInt((row + x) * 4, buffer[y * TILE_SIZE + x]);
+            }
+        }
+    }
+
+    private void rasterizeTriangle(int base, int i0, int i1, int i2, Sampler sampler,
+                                   int[] buffer, int tileX, int tileY, int tw, int th) {
+        float[] v = quads;
+        int p0 = base + i0 * FLOATS_PER_VERTEX;
+        int p1 = base + i1 * FLOATS_PER_VERTEX;
+        int p2 = base + i2 * FLOATS_PER_VERTEX;
+
+        float area = edge(v[p0], v[p0 + 1], v[p1], v[p1 + 1], v[p2], v[p2 + 1]);
+        if (area == 0 || Float.isNaN(area)) return;
+        if (area < 0) {
+            int t = p1;
+            p1 = p2;
+            p2 = t;
+            area = -area;
+        }
+
+        float x0 = v[p0], y0 = v[p0 + 1];
+        float x1 = v[p1], y1 = v[p1 + 1];
+        float x2 = v[p2], y2 = v[p2 + 1];
+
+        int minX = Math.max(tileX, (int) Math.floor(Math.min(x0, Math.min(x1, x2))));
+        int maxX = Math.min(tileX + tw - 1, (int) Math.ceil(Math.max(x0, Math.max(x1, x2))));
+        int minY = Math.max(tileY, (int) Math.floor(Math.min(y0, Math.min(y1, y2))));
+        int maxY = Math.min(tileY + th - 1, (int) Math.ceil(Math.max(y0, Math.max(y1, y2))));
+        if (minX > maxX || minY > maxY) return;
+
+        // Правило top-left: пиксель на общей диагонали квада рисуется ровно один раз
+        boolean tl0 = isTopLeft(x2 - x1, y2 - y1);
+        boolean tl1 = isTopLeft(x0 - x2, y0 - y2);
+        boolean tl2 = isTopLeft(x1 - x0, y1 - y0);
+
+        float inv = 1f / area;
+
+        for (int py = minY; py <= maxY; py++) {
+            float cy = py + 0.5f;
+            for (int px = minX; px <= maxX; px++) {
+                float cx = px + 0.5f;
+
+                float w0 = edge(x1, y1, x2, y2, cx, cy);
+                float w1 = edge(x2, y2, x0, y0, cx, cy);
+                float w2 = edge(x0, y0, x1, y1, cx, cy);
+
+                if (w0 < 0 || w1 < 0 || w2 < 0) continue;
+                if ((w0 == 0 && !tl0) || (w1 == 0 && !tl1) || (w2 == 0 && !tl2)) continue;
+
+                float b0 = w0 * inv, b1 = w1 * inv, b2 = w2 * inv;
+
+                float u = b0 * v[p0 + 2] + b1 * v[p1 + 2] + b2 * v[p2 + 2];
+                float t = b0 * v[p0 + 3] + b1 * v[p1 + 3] + b2 * v[p2 + 3];
+                float r = b0 * v[p0 + 4] + b1 * v[p1 + 4] + b2 * v[p2 + 4];
+                float g = b0 * v[p0 + 5] + b1 * v[p1 + 5] + b2 * v[p2 + 5];
+                float b = b0 * v[p0 + 6] + b1 * v[p1 + 6] + b2 * v[p2 + 6];
+                float a = b0 * v[p0 + 7] + b1 * v[p1 + 7] + b2 * v[p2 + 7];
+
+                int texel = sampler.sample(u, t);
+                r *= ((texel >>> 24) & 0xFF) / 255f;
+                g *= ((texel >>> 16) & 0xFF) / 255f;
+                b *= ((texel >>> 8) & 0xFF) / 255f;
+                a *= (texel & 0xFF) / 255f;
+                if (a <= 0) continue;
+
+                int index = (py - tileY) * TILE_SIZE + (px - tileX);
+                buffer[index] = blend(buffer[index], r, g, b, a);
+            }
+        }
+    }
+
+    private static float edge(float ax, float ay, float bx, float by, float px, float py) {
+        return (bx - ax) * (py - ay) - (by - ay) * (px - ax);
+    }
+
+    private static boolean isTopLeft(float dx, float dy) {
+        return (dy == 0 && dx > 0) || dy < 0;
+    }
+
+    // SRC_ALPHA, ONE_MINUS_SRC_ALPHA — и для цвета, и для альфы, как glBlendFunc
+    private static int blend(int dst, float r, float g, float b, float a) {
+        a = Math.min(a, 1f);
+        float k = 1f - a;
+        int dr = (dst >>> 24) & 0xFF, dg = (dst >>> 16) & 0xFF, db = (dst >>> 8) & 0xFF, da = dst & 0xFF;
+        return (toByte(Math.min(r, 1f) * a + dr / 255f * k) << 24)
+                | (toByte(Math.min(g, 1f) * a + dg / 255f * k) << 16)
+                | (toByte(Math.min(b, 1f) * a + db / 255f * k) << 8)
+                | toByte(a * a + da / 255f * k);
+    }
+
+    private static int toByte(float value) {
+        return Math.max(0, Math.min(255, Math.round(value * 255f)));
+    }
+
+    // === Samplers ===
+
+    /**
+     * Returns texels packed as RGBA (red in the high byte).
+     */
+    private interface Sampler {
+        int sample(float u, float v);
+    }
+
+    private static final Sampler WHITE = (u, v) -> 0xFFFFFFFF;
+    private static final Sampler TRANSPARENT = (u, v) -> 0;
+
+    /**
+     * Loaded texture: GL_NEAREST (the GL renderer forces it on every texture), GL_REPEAT. The GL copy is
+     * flipped on upload, so v = 1 is the top image row.
+     */
+    private static final class ImageSampler implements Sampler {
+        final BufferedImage image;
+        final int w;
+        final int h;
+        final int[] texels;
+
+        ImageSampler(BufferedImage image) {
+            this.image = image;
+            this.w = image.getWidth();
+            this.h = image.getHeight();
+            this.texels = image.getRGB(0, 0, w, h, null, 0, w);
+            for (int i = 0; i < texels.length; i++) {
+                int argb = texels[i];
+                texels[i] = (argb << 8) | (argb >>> 24);
+            }
+        }
+
+        @Override
+        public int sample(float u, float v) {
+            int x = Math.floorMod((int) Math.floor(u * w), w);
+            int y = Math.floorMod((int) Math.floor(v * h), h);
+            // Строки GL считаются снизу, строки изображения — сверху
+            return texels[(h - 1 - y) * w + x];
+        }
+    }
+
+    /**
+     * Canvas pixels straight from its buffer: GL_NEAREST, GL_CLAMP, v = 0 is the first buffer row.
+     */
+    private static final class CanvasSampler implements Sampler {
+        final ByteBuffer buffer;
+        final int w;
+        final int h;
+
+        CanvasSampler(BitmapCanvasGpu canvas) {
+            this.buffer = canvas.getBuffer();
+            this.w = canvas.getWidthInt();
+            this.h = canvas.getHeightInt();
+        }
+
+        @Override
+        public int sample(float u, float v) {
+            int x = Math.max(0, Math.min(w - 1, (int) Math.floor(u * w)));
+            int y = Math.max(0, Math.min(h - 1, (int) Math.floor(v * h)));
+            int i = (y * w + x) * 4;
+            return ((buffer.get(i) & 0xFF) << 24)
+                    | ((buffer.get(i + 1) & 0xFF) << 16)
+                    | ((buffer.get(i + 2) & 0xFF) << 8)
+                    | (buffer.get(i + 3) & 0xFF);
+        }
+    }
+}